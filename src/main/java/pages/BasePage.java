@@ -5,16 +5,44 @@ import org.openqa.selenium.*;
 import org.openqa.selenium.interactions.Actions;
 import org.openqa.selenium.support.FindBy;
 import org.openqa.selenium.support.ui.Select;
+import pages.binding.LocatorProfiler;
+import selenium.PageActivityMonitor;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 import static io.qameta.allure.Allure.attachment;
 import static io.qameta.allure.Allure.step;
 
 public class BasePage extends BaseSeleniumPage {
+    // Sets the values with the native setter, so frameworks that track the value property (e.g. React) see the change.
+    private static final String FILL_FORM_SCRIPT = ""
+            + "var fields = arguments[0], values = arguments[1], rejected = [];"
+            + "for (var i = 0; i < fields.length; i++) {"
+            + "  var field = fields[i];"
+            + "  if (field.disabled || field.readOnly) {"
+            + "    rejected.push(i);"
+            + "    continue;"
+            + "  }"
+            + "  var prototype = field instanceof HTMLTextAreaElement ? HTMLTextAreaElement.prototype"
+            + "    : field instanceof HTMLSelectElement ? HTMLSelectElement.prototype : HTMLInputElement.prototype;"
+            + "  field.focus();"
+            + "  Object.getOwnPropertyDescriptor(prototype, 'value').set.call(field, values[i]);"
+            + "  field.dispatchEvent(new Event('input', {bubbles: true}));"
+            + "  field.dispatchEvent(new Event('change', {bubbles: true}));"
+            + "}"
+            + "return rejected;";
+    private static final String CHECK_FIELDS_SCRIPT = ""
+            + "var fields = arguments[0], rejected = [];"
+            + "for (var i = 0; i < fields.length; i++) {"
+            + "  if (fields[i].disabled || fields[i].readOnly) {"
+            + "    rejected.push(i);"
+            + "  }"
+            + "}"
+            + "return rejected;";
     public final int DEFAULT_TIMEOUT_SECONDS_UNTIL_BUSY = 1;
     public final int DEFAULT_TIMEOUT_SECONDS_UNTIL_READY = 120;
     @FindBy(css = "[id$='Update']")
@@ -26,8 +54,13 @@ public class BasePage extends BaseSeleniumPage {
         super(driver);
     }
 
+    /**
+     * Switches to a frame of the current frame.
+     *
+     * @param iframeName
+     */
     public void switchToIFrame(String iframeName) {
-        driver.switchTo().frame(iframeName);
+        enterFrame(iframeName);
     }
 
     /**
@@ -74,6 +107,119 @@ public class BasePage extends BaseSeleniumPage {
         }
     }
 
+    /**
+     * Types the values of several input fields with real keystrokes, in one action sequence, so key, input and
+     * validation handlers run the way they do for a user.
+     *
+     * @param values The fields and their values, in the order they must be filled in, e.g. a LinkedHashMap.
+     */
+    public void fillForm(Map<WebElement, String> values) {
+        fillForm(values, true);
+    }
+
+    /**
+     * Sets the values of several input fields, in the order of the map.
+     * Without keystrokes the values are set with one script call, which only fires the input and change events.
+     * Use that for forms that aren't under test themselves. Fields with special keys in their value,
+     * e.g. {@link Keys#TAB}, are always typed.
+     *
+     * @param values     The fields and their values, in the order they must be filled in, e.g. a LinkedHashMap.
+     * @param keystrokes Type all values with real keystrokes, in one action sequence.
+     */
+    public void fillForm(Map<WebElement, String> values, boolean keystrokes) {
+        // Typed into a disabled or read-only field, keystrokes are lost without an error, so check those first.
+        List<WebElement> typedFields = new ArrayList<>();
+        values.forEach((field, value) -> {
+            if (keystrokes || containsKeys(value)) {
+                typedFields.add(field);
+            }
+        });
+        rejectReadOnly(typedFields, CHECK_FIELDS_SCRIPT, typedFields);
+
+        // Consecutive fields that are set the same way go in one call, and the calls keep the order of the fields.
+        List<WebElement> scriptFields = new ArrayList<>();
+        List<String> scriptValues = new ArrayList<>();
+        Actions typing = null;
+        boolean tab = false;
+        Keys selectAll = isMac() ? Keys.COMMAND : Keys.CONTROL;
+        for (Map.Entry<WebElement, String> entry : values.entrySet()) {
+            WebElement field = entry.getKey();
+            String value = entry.getValue();
+            tab |= value.contains(Keys.TAB);
+            if (keystrokes || containsKeys(value)) {
+                setValues(scriptFields, scriptValues);
+                if (typing == null) {
+                    typing = new Actions(driver);
+                }
+                // The same as clear() and sendKeys(), as pointer and key actions.
+                typing.scrollToElement(field).click(field)
+                        .keyDown(selectAll).sendKeys("a").keyUp(selectAll)
+                        .sendKeys(Keys.BACK_SPACE)
+                        .sendKeys(value);
+            } else {
+                if (typing != null) {
+                    typing.perform();
+                    typing = null;
+                }
+                scriptFields.add(field);
+                scriptValues.add(value);
+            }
+        }
+        setValues(scriptFields, scriptValues);
+        if (typing != null) {
+            typing.perform();
+        }
+        markPageChanged();
+        if (tab) {
+            waitPageBusy();
+        }
+    }
+
+    /**
+     * Sets the values of fields with one script call, and clears the lists.
+     */
+    private void setValues(List<WebElement> fields, List<String> values) {
+        if (fields.isEmpty()) {
+            return;
+        }
+        rejectReadOnly(fields, FILL_FORM_SCRIPT, fields, values);
+        fields.clear();
+        values.clear();
+    }
+
+    /**
+     * Runs a script that returns the indexes of the fields that are disabled or read-only, and throws for the first.
+     */
+    @SuppressWarnings("unchecked")
+    private void rejectReadOnly(List<WebElement> fields, String script, Object... arguments) {
+        if (fields.isEmpty()) {
+            return;
+        }
+        List<Long> rejected = (List<Long>) ((JavascriptExecutor) driver).executeScript(script, arguments);
+        if (!rejected.isEmpty()) {
+            throw new ElementNotInteractableException("Field is disabled or read-only: " + fields.get(rejected.get(0).intValue()));
+        }
+    }
+
+    /**
+     * Clicks all elements matching a locator in one action sequence.
+     * Each element is scrolled into view before it is clicked, like {@link WebElement#click()}.
+     *
+     * @param by
+     */
+    public void clickAll(By by) {
+        List<WebElement> elements = findElements(by);
+        if (elements.isEmpty()) {
+            return;
+        }
+        Actions actions = new Actions(driver);
+        for (WebElement element : elements) {
+            actions.scrollToElement(element).click(element);
+        }
+        actions.perform();
+        markPageChanged();
+    }
+
     public void selectFromList(WebElement element, String value) {
         scrollTo(element);
         try {
@@ -87,6 +233,19 @@ public class BasePage extends BaseSeleniumPage {
         }
     }
 
+    private boolean isMac() {
+        return driver instanceof HasCapabilities
+                && ((HasCapabilities) driver).getCapabilities().getPlatformName() != null
+                && ((HasCapabilities) driver).getCapabilities().getPlatformName().is(Platform.MAC);
+    }
+
+    /**
+     * Checks whether a value contains special keys, which are characters in the private use area.
+     */
+    private static boolean containsKeys(String value) {
+        return value.chars().anyMatch(character -> character >= '\uE000' && character <= '\uF8FF');
+    }
+
     @Step
     public void clickElement(WebElement element) {
         waitUntilVisible(element);
@@ -102,7 +261,7 @@ public class BasePage extends BaseSeleniumPage {
     public String getTextByXPath(String xpath) {
         String val = "";
         try {
-            WebElement element = driver.findElement(By.xpath(xpath));
+            WebElement element = findElement(By.xpath(xpath));
             val = element.getAttribute("value");
         } catch (Exception e) {
             e.printStackTrace();
@@ -112,39 +271,45 @@ public class BasePage extends BaseSeleniumPage {
     }
 
     public void selectByText(By by, String text) {
-        Select select = new Select(driver.findElement(by));
+        Select select = new Select(findElement(by));
         select.selectByVisibleText(text);
     }
 
     public void waitPageBusy() {
-        // Wait a short while for the page to become busy.
-        // And then wait a long time for the page to become ready.
-        // If the page becomes ready in less than the minimum time, then only that time will be wasted.
+        // Wait a short quiet window for the page to become busy.
+        // And then wait up to a long time for the page to become ready.
+        // A page that stays idle only costs the quiet window.
         waitPageBusy(DEFAULT_TIMEOUT_SECONDS_UNTIL_BUSY, DEFAULT_TIMEOUT_SECONDS_UNTIL_READY);
     }
 
-    private void waitPageBusy(int default_timeout_seconds_until_busy, int default_timeout_seconds_until_ready) {
+    /**
+     * Waits until the page has no requests in flight, no running animations and no DOM changes.
+     *
+     * @param timeoutSecondsUntilBusy  The longest quiet window, the page is ready when nothing happens for this long.
+     * @param timeoutSecondsUntilReady The longest time to wait for the page to become ready.
+     */
+    private void waitPageBusy(int timeoutSecondsUntilBusy, int timeoutSecondsUntilReady) {
+        Duration quiet = Duration.ofMillis(Math.min(PageActivityMonitor.QUIET_MILLIS, timeoutSecondsUntilBusy * 1000L));
+        try {
+            PageActivityMonitor.waitUntilQuiet(driver, quiet, Duration.ofSeconds(timeoutSecondsUntilReady));
+        } catch (TimeoutException e) {
+            step("Page not ready", () -> {
+                attachment("Page activity", e.getMessage());
+                takeScreenshot();
+                throw e;
+            });
+        }
     }
 
     @Step
     public List<String> getSelectValues(WebElement element, WebElement frame) {
-        driver.switchTo().frame(frame);
-        Select select = new Select(element);
-        List<String> options = new ArrayList<>();
-        for (WebElement option : select.getOptions()) {
-            options.add(option.getText());
-        }
-        driver.switchTo().defaultContent();
-        return options;
+        return withinFrame(frame, () -> getSelectValues(element));
     }
 
     public void selectFromListPartial(WebElement element, String value) {
-        Select select = new Select(element);
         String fullValue = null;
-        List<String> allValues = new ArrayList<>();
-        for (WebElement option : select.getOptions()) {
-            String text = option.getText();
-            allValues.add(text);
+        List<String> allValues = getSelectValues(element);
+        for (String text : allValues) {
             if (fullValue == null && text.startsWith(value)) {
                 fullValue = text;
             }
@@ -156,17 +321,14 @@ public class BasePage extends BaseSeleniumPage {
                 throw new NoSuchElementException("Missing list item starting with: " + value);
             });
         }
-        select.selectByVisibleText(fullValue);
+        selectByVisibleText(element, fullValue);
         waitPageBusy();
     }
 
     public void selectFromListContains(WebElement element, String value) {
-        Select select = new Select(element);
         String fullValue = null;
-        List<String> allValues = new ArrayList<>();
-        for (WebElement option : select.getOptions()) {
-            String text = option.getText();
-            allValues.add(text);
+        List<String> allValues = getSelectValues(element);
+        for (String text : allValues) {
             if (fullValue == null && text.contains(value)) {
                 fullValue = text;
             }
@@ -178,16 +340,13 @@ public class BasePage extends BaseSeleniumPage {
                 throw new NoSuchElementException("Missing list item containing: " + value);
             });
         }
-        select.selectByVisibleText(fullValue);
+        selectByVisibleText(element, fullValue);
         waitPageBusy();
     }
 
     public String getRadioSelectedValue(WebElement wrapper) {
-        try {
-            return wrapper.findElement(By.xpath(".//label[.//input[@checked]]/span[contains(@class, 'gw-label--inner')]")).getText();
-        } catch (NoSuchElementException e) {
-            return "";
-        }
+        List<String> selected = getTexts(wrapper, ".//label[.//input[@checked]]/span[contains(@class, 'gw-label--inner')]");
+        return selected.isEmpty() ? "" : selected.get(0);
     }
 
     @Step
@@ -209,13 +368,16 @@ public class BasePage extends BaseSeleniumPage {
 
     public List<String> getRadioValues(WebElement wrapper) {
         try {
-            List<WebElement> labels = wrapper.findElements(By.xpath(".//label/span[contains(@class, 'gw-label--inner')]"));
-            return labels.stream().map(WebElement::getText).collect(Collectors.toList());
+            return getTexts(wrapper, ".//label/span[contains(@class, 'gw-label--inner')]");
         } catch (NoSuchElementException e) {
             return Collections.emptyList();
         }
     }
 
+    private List<String> getTexts(WebElement root, String xpath) {
+        return LocatorProfiler.profile(getClass(), By.xpath(xpath), () -> DomReader.getTexts(driver, root, xpath), List::size);
+    }
+
     public boolean isElementVisible(WebElement element, String elementName) {
         boolean bFlag = false;
         try {
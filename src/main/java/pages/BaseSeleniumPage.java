@@ -1,21 +1,23 @@
 package pages;
 
 import io.qameta.allure.Allure;
-import io.qameta.allure.Attachment;
 import org.apache.commons.lang3.ArrayUtils;
 import org.openqa.selenium.*;
 import org.openqa.selenium.interactions.Actions;
-import org.openqa.selenium.support.PageFactory;
 import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.Select;
-import org.openqa.selenium.support.ui.WebDriverWait;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pages.binding.ElementIndex;
+import pages.binding.Elements;
+import pages.binding.PageBinders;
+import utils.ScreenshotService;
 
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 import static io.qameta.allure.Allure.step;
 
@@ -26,7 +28,99 @@ public class BaseSeleniumPage {
 
     public BaseSeleniumPage(WebDriver driver) {
         this.driver = driver;
-        PageFactory.initElements(driver, this);
+        PageBinders.bind(this, driver);
+    }
+
+    /**
+     * Finds an element like {@link WebDriver#findElement(By)}.
+     * Id, name and data-test locators are resolved from the page's element index without a WebDriver command.
+     *
+     * @param by
+     * @return
+     */
+    public WebElement findElement(By by) {
+        return Elements.find(getClass(), driver, by);
+    }
+
+    /**
+     * Finds elements like {@link WebDriver#findElements(By)}, and keeps the element index up to date when they are used.
+     *
+     * @param by
+     * @return
+     */
+    public List<WebElement> findElements(By by) {
+        return Elements.findAll(getClass(), driver, by);
+    }
+
+    /**
+     * Makes the next lookup collect the element index again, e.g. after switching frames.
+     */
+    public void invalidateElementIndex() {
+        ElementIndex index = ElementIndex.forSearchContext(driver);
+        if (index != null) {
+            index.invalidate();
+        }
+    }
+
+    /**
+     * Switches to a frame path starting at the top level document, without a WebDriver command when it is already current.
+     *
+     * @param frames Names, ids, indexes or frame elements. None for the top level document.
+     */
+    public void switchToFrame(Object... frames) {
+        FrameContext.of(driver).switchTo(frames);
+    }
+
+    public void switchToDefaultContent() {
+        FrameContext.of(driver).switchTo();
+    }
+
+    /**
+     * Switches to a frame of the current frame, like {@link WebDriver.TargetLocator#frame(String)}.
+     *
+     * @param frame A name, id, index or frame element.
+     */
+    public void enterFrame(Object frame) {
+        FrameContext.of(driver).enter(frame);
+    }
+
+    /**
+     * Runs an action inside a frame of the current context and switches back afterwards.
+     *
+     * @param frame  A name, id, index or frame element.
+     * @param action
+     * @param <T>
+     * @return The result of the action.
+     */
+    public <T> T withinFrame(Object frame, Supplier<T> action) {
+        return FrameContext.of(driver).within(frame, action);
+    }
+
+    public void withinFrame(Object frame, Runnable action) {
+        withinFrame(frame, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs several {@link #withinFrame(Object, Supplier)} calls without switching back between them,
+     * so consecutive operations on the same frame switch into it once.
+     *
+     * @param action
+     */
+    public void batchInFrames(Runnable action) {
+        FrameContext.of(driver).batch(action);
+    }
+
+    /**
+     * Makes the next lookup check whether the page changed, after commands the element index doesn't see, e.g. scripts.
+     */
+    public void markPageChanged() {
+        ElementIndex index = ElementIndex.forSearchContext(driver);
+        if (index != null) {
+            index.markUnverified();
+        }
     }
 
     public byte[] takeScreenshot() {
@@ -34,17 +128,25 @@ public class BaseSeleniumPage {
         return takeScreenshot(this.getClass().getSimpleName());
     }
 
-    @Attachment(value = "[Screenshot] {name}", type = "image/png")
+    /**
+     * Takes a screenshot and adds it to the report. The file is written in the background.
+     *
+     * @param name
+     * @return The screenshot.
+     */
     public byte[] takeScreenshot(String name) {
+        byte[] screenshot;
         try {
-            return ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+            screenshot = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
         } catch (Exception e) {
             step("Unable to take screenshot", () -> {
                 Allure.attachment("Exception", e.toString());
             });
             // If the screenshot is not possible, return a broken image.
-            return new byte[]{1};
+            screenshot = new byte[]{1};
         }
+        ScreenshotService.getInstance().attach(name, screenshot);
+        return screenshot;
     }
 
     public void takeElementScreenshot(WebElement element, String name) {
@@ -77,9 +179,7 @@ public class BaseSeleniumPage {
      * @return
      */
     public String getListSelectedKey(WebElement element) {
-        Select select = new Select(element);
-        WebElement selected = select.getFirstSelectedOption();
-        return selected.getAttribute("value");
+        return getFirstSelectedOption(element).getValue();
     }
 
     /**
@@ -89,9 +189,16 @@ public class BaseSeleniumPage {
      * @return
      */
     public String getListSelectedValue(WebElement element) {
-        Select select = new Select(element);
-        WebElement selected = select.getFirstSelectedOption();
-        return selected.getText();
+        return getFirstSelectedOption(element).getText();
+    }
+
+    private DomReader.Option getFirstSelectedOption(WebElement element) {
+        for (DomReader.Option option : DomReader.getOptions(driver, element)) {
+            if (option.isSelected()) {
+                return option;
+            }
+        }
+        throw new NoSuchElementException("No options are selected");
     }
 
     public void waitUntilVisible(WebElement element) {
@@ -99,8 +206,8 @@ public class BaseSeleniumPage {
     }
 
     public void waitUntilVisible(int timeoutInSeconds, WebElement element) {
-        Duration timeoutDuration = Duration.ofSeconds(timeoutInSeconds);
-        new WebDriverWait(driver, timeoutDuration).until(ExpectedConditions.visibilityOf(element));
+        ElementWait.until(driver, Duration.ofSeconds(timeoutInSeconds), ElementWait.VISIBLE, element, null,
+                ExpectedConditions.visibilityOf(element));
     }
 
     public void waitUntilInvisible(WebElement element) {
@@ -108,8 +215,8 @@ public class BaseSeleniumPage {
     }
 
     public void waitUntilInvisible(int timeoutInSeconds, WebElement element) {
-        Duration timeoutDuration = Duration.ofSeconds(timeoutInSeconds);
-        new WebDriverWait(driver, timeoutDuration).until(ExpectedConditions.invisibilityOf(element));
+        ElementWait.until(driver, Duration.ofSeconds(timeoutInSeconds), ElementWait.INVISIBLE, element, null,
+                ExpectedConditions.invisibilityOf(element));
     }
 
     public void waitUntilInputValue(WebElement element, String expectedValue) {
@@ -117,8 +224,8 @@ public class BaseSeleniumPage {
     }
 
     public void waitUntilInputValue(int timeoutInSeconds, WebElement element, String value) {
-        Duration timeoutDuration = Duration.ofSeconds(timeoutInSeconds);
-        new WebDriverWait(driver, timeoutDuration).until(ExpectedConditions.attributeToBe(element, "value", value));
+        ElementWait.until(driver, Duration.ofSeconds(timeoutInSeconds), ElementWait.VALUE, element, value,
+                ExpectedConditions.attributeToBe(element, "value", value));
     }
 
     public void waitUntilElementHasClass(WebElement element, String className) {
@@ -126,8 +233,8 @@ public class BaseSeleniumPage {
     }
 
     public void waitUntilElementHasClass(int timeoutInSeconds, WebElement element, String className) {
-        Duration timeoutDuration = Duration.ofSeconds(timeoutInSeconds);
-        new WebDriverWait(driver, timeoutDuration).until(ExpectedConditions.attributeContains(element, "class", className));
+        ElementWait.until(driver, Duration.ofSeconds(timeoutInSeconds), ElementWait.CLASS_CONTAINS, element, className,
+                ExpectedConditions.attributeContains(element, "class", className));
     }
 
     public void waitUntilElementDoesNotHaveClass(WebElement element, String className) {
@@ -135,8 +242,8 @@ public class BaseSeleniumPage {
     }
 
     public void waitUntilElementDoesNotHaveClass(int timeoutInSeconds, WebElement element, String className) {
-        Duration timeoutDuration = Duration.ofSeconds(timeoutInSeconds);
-        new WebDriverWait(driver, timeoutDuration).until((ExpectedCondition<Boolean>) driver -> !hasClass(element, className));
+        ElementWait.until(driver, Duration.ofSeconds(timeoutInSeconds), ElementWait.CLASS_MISSING, element, className,
+                (ExpectedCondition<Boolean>) driver -> !hasClass(element, className));
     }
 
     /**
@@ -158,9 +265,8 @@ public class BaseSeleniumPage {
      * @return A list of the options in the select.
      */
     public List<String> getSelectValues(WebElement element) {
-        Select select = new Select(element);
         List<String> options = new ArrayList<>();
-        for (WebElement option : select.getOptions()) {
+        for (DomReader.Option option : DomReader.getOptions(driver, element)) {
             options.add(option.getText());
         }
         return options;
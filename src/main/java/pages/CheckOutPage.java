@@ -7,6 +7,9 @@ import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.FindBy;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 
 public class CheckOutPage extends BasePage {
 
@@ -38,9 +41,12 @@ public class CheckOutPage extends BasePage {
     @Step
     public void fillInBillingDetails(String fName, String lName, String postal) {
         checkoutButton.click();
-        setValue(firstName, fName);
-        setValue(lastName, lName);
-        setValue(postalCode, postal);
+        Map<WebElement, String> values = new LinkedHashMap<>();
+        values.put(firstName, fName);
+        values.put(lastName, lName);
+        values.put(postalCode, postal);
+        // The billing form only leads to the order, so the values are set without typing.
+        fillForm(values, false);
         continueButton.click();
     }
 
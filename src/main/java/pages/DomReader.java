@@ -0,0 +1,89 @@
+package pages;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.UnexpectedTagNameException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads many values from the page in one script call, instead of one WebDriver command per element.
+ */
+public class DomReader {
+    // The option text is normalised like the visible text WebDriver returns.
+    private static final String OPTIONS_SCRIPT = ""
+            + "var select = arguments[0];"
+            + "if (!select.options) {"
+            + "  return null;"
+            + "}"
+            + "return Array.prototype.map.call(select.options, function (option) {"
+            + "  return [option.textContent.replace(/[\\s\\u00a0]+/g, ' ').trim(), option.value, option.selected];"
+            + "});";
+    private static final String TEXTS_SCRIPT = ""
+            + "var nodes = document.evaluate(arguments[1], arguments[0], null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);"
+            + "var texts = [];"
+            + "for (var i = 0; i < nodes.snapshotLength; i++) {"
+            + "  var node = nodes.snapshotItem(i);"
+            + "  texts.push((node.innerText !== undefined ? node.innerText : node.textContent).trim());"
+            + "}"
+            + "return texts;";
+
+    /**
+     * Returns the text, value and selected state of all options in a select element.
+     *
+     * @param driver
+     * @param select The select element.
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Option> getOptions(WebDriver driver, WebElement select) {
+        List<List<Object>> values = (List<List<Object>>) ((JavascriptExecutor) driver).executeScript(OPTIONS_SCRIPT, select);
+        if (values == null) {
+            throw new UnexpectedTagNameException("select", select.getTagName());
+        }
+        List<Option> options = new ArrayList<>(values.size());
+        for (List<Object> value : values) {
+            options.add(new Option((String) value.get(0), (String) value.get(1), (Boolean) value.get(2)));
+        }
+        return options;
+    }
+
+    /**
+     * Returns the texts of the elements matching an XPath expression.
+     *
+     * @param driver
+     * @param root   The element the expression is relative to.
+     * @param xpath  E.g. ".//label/span".
+     * @return The texts in document order.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<String> getTexts(WebDriver driver, WebElement root, String xpath) {
+        return (List<String>) ((JavascriptExecutor) driver).executeScript(TEXTS_SCRIPT, root, xpath);
+    }
+
+    public static class Option {
+        private final String text;
+        private final String value;
+        private final boolean selected;
+
+        private Option(String text, String value, boolean selected) {
+            this.text = text;
+            this.value = value;
+            this.selected = selected;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public boolean isSelected() {
+            return selected;
+        }
+    }
+}
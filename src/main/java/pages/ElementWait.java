@@ -0,0 +1,199 @@
+package pages;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.UnhandledAlertException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.openqa.selenium.support.ui.WebDriverWait;
+import utils.LatencyStats;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Waits for element conditions in the browser. Each wait is an asynchronous script that checks a small predicate
+ * whenever the DOM changes, instead of a WebDriverWait that sends a command every 500 ms.
+ * The matching ExpectedCondition is the fallback for drivers without asynchronous scripts, for elements that
+ * can't be located yet, and for the final timeout exception, so the behaviour and messages stay the same.
+ */
+public class ElementWait {
+    // Below the default script timeout of 30 seconds, longer waits are split into several calls.
+    private static final long MAX_SCRIPT_MILLIS = 25000;
+    private static final int MAX_FAILURES = 3;
+    private static final String SCRIPT_START = ""
+            + "var e = arguments[0], arg = arguments[1], timeout = arguments[2], callback = arguments[arguments.length - 1];"
+            // An approximation of WebDriver's displayed check. Results are confirmed with the real check.
+            + "function isVisible(e) {"
+            + "  if (!e.isConnected) {"
+            + "    return false;"
+            + "  }"
+            + "  if (e.checkVisibility) {"
+            + "    if (!e.checkVisibility({opacityProperty: true, visibilityProperty: true})) {"
+            + "      return false;"
+            + "    }"
+            + "  } else {"
+            + "    var style = getComputedStyle(e);"
+            + "    if (style.display === 'none' || style.visibility === 'hidden' || style.opacity === '0') {"
+            + "      return false;"
+            + "    }"
+            + "  }"
+            + "  var rect = e.getBoundingClientRect();"
+            + "  return rect.width > 0 && rect.height > 0;"
+            + "}"
+            + "function test() {"
+            + "  try {"
+            + "    return (function () {";
+    private static final String SCRIPT_END = ""
+            + "    })();"
+            + "  } catch (ignored) {"
+            + "    return false;"
+            + "  }"
+            + "}"
+            + "if (test()) {"
+            + "  callback('true');"
+            + "  return;"
+            + "}"
+            + "var done = false, observer, interval, deadline;"
+            + "function finish(result) {"
+            + "  if (done) {"
+            + "    return;"
+            + "  }"
+            + "  done = true;"
+            + "  observer.disconnect();"
+            + "  clearInterval(interval);"
+            + "  clearTimeout(deadline);"
+            + "  document.removeEventListener('transitionend', check, true);"
+            + "  document.removeEventListener('animationend', check, true);"
+            + "  callback(result);"
+            + "}"
+            + "function check() {"
+            + "  if (test()) {"
+            + "    finish('true');"
+            + "  } else if (!e.isConnected) {"
+            // The page replaced the element. A page object proxy locates the new one on the next call.
+            + "    finish('detached');"
+            + "  }"
+            + "}"
+            + "observer = new MutationObserver(check);"
+            + "observer.observe(document, {subtree: true, childList: true, attributes: true, characterData: true});"
+            + "document.addEventListener('transitionend', check, true);"
+            + "document.addEventListener('animationend', check, true);"
+            // Style changes without DOM changes, e.g. during a transition, are caught by a slow in-browser check.
+            + "interval = setInterval(check, 100);"
+            + "deadline = setTimeout(function () { finish('false'); }, timeout);"
+            + "check();";
+
+    public static final Predicate VISIBLE = new Predicate("visible", "return isVisible(e);", true);
+    public static final Predicate INVISIBLE = new Predicate("invisible", "return !e.isConnected || !isVisible(e);", true);
+    public static final Predicate VALUE = new Predicate("value", "return e.value === arg;", false);
+    // Same as ExpectedConditions.attributeContains, a substring of the class attribute.
+    public static final Predicate CLASS_CONTAINS = new Predicate("class contains",
+            "return (e.getAttribute('class') || '').indexOf(arg) >= 0;", false);
+    // Same as BaseSeleniumPage.hasClass, the class attribute split on spaces.
+    public static final Predicate CLASS_MISSING = new Predicate("class missing",
+            "return (e.getAttribute('class') || '').split(' ').indexOf(arg) < 0;", false);
+
+    private static final LatencyStats waits = new LatencyStats();
+    private static final AtomicLong scripts = new AtomicLong();
+    private static final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * Waits until a condition is true for an element.
+     *
+     * @param driver
+     * @param timeout
+     * @param predicate The condition, evaluated in the browser.
+     * @param element
+     * @param argument  The predicate's argument, e.g. the expected value. May be null.
+     * @param condition The same condition as an ExpectedCondition.
+     * @throws org.openqa.selenium.TimeoutException When the condition is not true in time.
+     */
+    public static void until(WebDriver driver, Duration timeout, Predicate predicate, WebElement element, String argument,
+                             ExpectedCondition<?> condition) {
+        long start = System.nanoTime();
+        long end = start + timeout.toNanos();
+        try {
+            if (waitInBrowser(driver, end, predicate, element, argument)) {
+                if (!predicate.confirm || isTrue(condition.apply(driver))) {
+                    return;
+                }
+            }
+            fallbacks.incrementAndGet();
+            // With no time left the condition is still checked once, and the usual TimeoutException is thrown.
+            long remaining = Math.max(0, end - System.nanoTime());
+            new WebDriverWait(driver, Duration.ofNanos(remaining)).until(condition);
+        } finally {
+            waits.recordSince(start);
+        }
+    }
+
+    public static String getStatistics() {
+        return "Waits: " + waits + "\n"
+                + "Browser scripts: " + scripts.get() + "\n"
+                + "Polling fallbacks: " + fallbacks.get();
+    }
+
+    /**
+     * @return True when the condition became true, false when the caller must fall back to polling.
+     */
+    private static boolean waitInBrowser(WebDriver driver, long end, Predicate predicate, WebElement element, String argument) {
+        if (!(driver instanceof JavascriptExecutor)) {
+            return false;
+        }
+        int failures = 0;
+        while (System.nanoTime() < end) {
+            long chunkMillis = Math.max(1, Math.min(MAX_SCRIPT_MILLIS, (end - System.nanoTime()) / 1_000_000));
+            Object result;
+            try {
+                scripts.incrementAndGet();
+                result = ((JavascriptExecutor) driver).executeAsyncScript(predicate.script, element, argument, chunkMillis);
+            } catch (NoSuchElementException | StaleElementReferenceException e) {
+                // Not there, so also not visible. Other conditions poll until the element is found.
+                return predicate == INVISIBLE;
+            } catch (UnhandledAlertException | NoSuchWindowException e) {
+                throw e;
+            } catch (UnsupportedCommandException e) {
+                return false;
+            } catch (WebDriverException e) {
+                // The document was unloaded during the wait.
+                if (++failures > MAX_FAILURES) {
+                    return false;
+                }
+                continue;
+            }
+            failures = 0;
+            if ("true".equals(result)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTrue(Object result) {
+        return result != null && !Boolean.FALSE.equals(result);
+    }
+
+    public static class Predicate {
+        private final String name;
+        private final String script;
+        // Whether the browser result must be confirmed with the ExpectedCondition, because it is an approximation.
+        private final boolean confirm;
+
+        private Predicate(String name, String body, boolean confirm) {
+            this.name = name;
+            this.script = SCRIPT_START + body + SCRIPT_END;
+            this.confirm = confirm;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
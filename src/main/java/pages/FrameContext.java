@@ -0,0 +1,264 @@
+package pages;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchFrameException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import pages.binding.ElementIndex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Tracks the current frame of a driver, so switching to the frame that is already current, or to a frame nearby,
+ * takes fewer WebDriver commands.
+ * A frame is a name or id, an index, or a frame element. Frame elements are compared by identity, so the same
+ * page object field is recognised without asking the browser.
+ * The browser can leave the tracked frame without a switch, e.g. when the page navigates, and tests can switch
+ * directly with {@link WebDriver#switchTo()}. So the window of a tracked frame is stamped, and the tracked frame is
+ * only used after a script confirms the stamp. Otherwise the switch starts from the top level document.
+ */
+public class FrameContext {
+    private static final Map<WebDriver, FrameContext> contexts = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final AtomicLong switches = new AtomicLong();
+    private static final AtomicLong skipped = new AtomicLong();
+    private static final AtomicLong lost = new AtomicLong();
+    private static final AtomicLong stamps = new AtomicLong();
+    private static final String STAMP_SCRIPT = "window.__frameContext = arguments[0];";
+    private static final String CHECK_SCRIPT = ""
+            + "return arguments[0] === null ? window === window.top : window.__frameContext === arguments[0];";
+
+    private final WebDriver driver;
+    // The frames from the top level document to the current frame. Null when unknown, e.g. after a failed switch.
+    private List<Object> path = new ArrayList<>();
+    // Identifies the window of the current frame, null in the top level document.
+    private String stamp;
+    private final Deque<Scope> scopes = new ArrayDeque<>();
+
+    private FrameContext(WebDriver driver) {
+        this.driver = driver;
+    }
+
+    public static FrameContext of(WebDriver driver) {
+        return contexts.computeIfAbsent(driver, FrameContext::new);
+    }
+
+    /**
+     * Forgets the tracked frame, e.g. before a session is reused. The next session user starts in the top level document.
+     *
+     * @param driver
+     */
+    public static void reset(WebDriver driver) {
+        contexts.remove(driver);
+    }
+
+    public static String getStatistics() {
+        return "Frame switches: " + switches.get() + "\n"
+                + "Skipped frame switches: " + skipped.get() + "\n"
+                + "Left the tracked frame: " + lost.get();
+    }
+
+    /**
+     * Switches to a frame path starting at the top level document. Frames that are already current are not switched again.
+     *
+     * @param frames The frames from the top level document, none for the top level document itself.
+     */
+    public void switchTo(Object... frames) {
+        switchToPath(toList(frames));
+    }
+
+    /**
+     * Switches to a frame of the current frame, like {@link WebDriver.TargetLocator#frame(String)}.
+     *
+     * @param frame A name, id, index or frame element.
+     */
+    public void enter(Object frame) {
+        List<Object> target = toList(new Object[]{frame});
+        if (!isCurrent()) {
+            // The current frame is unknown, so only the browser can go down from it.
+            switchToFrame(frame);
+            invalidateIndex();
+            return;
+        }
+        target.addAll(0, path);
+        apply(target, target.size() - 1);
+    }
+
+    /**
+     * Runs an action in a frame of the current context, or of the enclosing {@link #batch(Runnable)}, and then
+     * switches back. Nested calls go further down the frame tree.
+     *
+     * @param frame
+     * @param action
+     * @param <T>
+     * @return The result of the action.
+     */
+    public <T> T within(Object frame, Supplier<T> action) {
+        List<Object> previous = path == null ? new ArrayList<>() : new ArrayList<>(path);
+        List<Object> target = new ArrayList<>(scopes.isEmpty() ? previous : scopes.peek().path);
+        target.addAll(toList(new Object[]{frame}));
+        switchToPath(target);
+        scopes.push(new Scope(target, false));
+        try {
+            return action.get();
+        } finally {
+            scopes.pop();
+            // Inside a batch the next frame operation decides where to go, and the batch switches back at the end.
+            if (scopes.isEmpty() || !scopes.peek().batch) {
+                switchToPath(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs several {@link #within(Object, Supplier)} calls without switching back to the current context in between,
+     * e.g. to read several fields of the same frame.
+     *
+     * @param action
+     */
+    public void batch(Runnable action) {
+        List<Object> previous = path == null ? new ArrayList<>() : new ArrayList<>(path);
+        scopes.push(new Scope(previous, true));
+        try {
+            action.run();
+        } finally {
+            scopes.pop();
+            switchToPath(previous);
+        }
+    }
+
+    private void switchToPath(List<Object> target) {
+        if (path != null && isSame(path, target) && isCurrent()) {
+            skipped.incrementAndGet();
+            return;
+        }
+        // Only move relative to the tracked frame when the browser is still in it. From the top level document
+        // switching to the default content first costs the same as checking.
+        int common = path == null || path.isEmpty() ? -1 : getCommonLength(path, target);
+        if (common > 0 && !isCurrent()) {
+            common = -1;
+        }
+        try {
+            apply(target, common);
+        } catch (NoSuchFrameException | StaleElementReferenceException e) {
+            if (common < 0) {
+                throw e;
+            }
+            // The tracked frame may have been reloaded or removed, start again from the top level document.
+            apply(target, -1);
+        }
+    }
+
+    /**
+     * @param target
+     * @param common The number of frames the current and target path share, or -1 to start from the top level document.
+     */
+    private void apply(List<Object> target, int common) {
+        List<Object> current = path;
+        path = null;
+        if (common >= 0 && common < current.size() && common == target.size() && current.size() - common == 1) {
+            driver.switchTo().parentFrame();
+            switches.incrementAndGet();
+        } else if (common < 0 || common < current.size()) {
+            driver.switchTo().defaultContent();
+            switches.incrementAndGet();
+            common = 0;
+        }
+        for (Object frame : target.subList(common, target.size())) {
+            switchToFrame(frame);
+        }
+        stamp = null;
+        if (!target.isEmpty()) {
+            stamp = String.valueOf(stamps.incrementAndGet());
+            ((JavascriptExecutor) driver).executeScript(STAMP_SCRIPT, stamp);
+        }
+        path = new ArrayList<>(target);
+        invalidateIndex();
+    }
+
+    private void switchToFrame(Object frame) {
+        if (frame instanceof WebElement) {
+            driver.switchTo().frame((WebElement) frame);
+        } else if (frame instanceof Integer) {
+            driver.switchTo().frame((Integer) frame);
+        } else {
+            driver.switchTo().frame((String) frame);
+        }
+        switches.incrementAndGet();
+    }
+
+    private void invalidateIndex() {
+        ElementIndex index = ElementIndex.forSearchContext(driver);
+        if (index != null) {
+            index.invalidate();
+        }
+    }
+
+    /**
+     * Checks with one script that the browser is still in the tracked frame.
+     *
+     * @return False when the tracked frame is unknown or the browser left it.
+     */
+    private boolean isCurrent() {
+        if (path == null) {
+            return false;
+        }
+        try {
+            if (Boolean.TRUE.equals(((JavascriptExecutor) driver).executeScript(CHECK_SCRIPT, path.isEmpty() ? null : stamp))) {
+                return true;
+            }
+        } catch (WebDriverException e) {
+            // E.g. the frame was removed.
+        }
+        lost.incrementAndGet();
+        path = null;
+        return false;
+    }
+
+    private static int getCommonLength(List<Object> path, List<Object> target) {
+        int length = 0;
+        while (length < path.size() && length < target.size() && isSame(path.get(length), target.get(length))) {
+            length++;
+        }
+        return length;
+    }
+
+    private static boolean isSame(List<Object> path, List<Object> target) {
+        return path.size() == target.size() && getCommonLength(path, target) == path.size();
+    }
+
+    private static boolean isSame(Object frame, Object other) {
+        // Comparing elements with equals would need a WebDriver command for lazy page object elements.
+        return frame instanceof WebElement || other instanceof WebElement ? frame == other : frame.equals(other);
+    }
+
+    private static List<Object> toList(Object[] frames) {
+        List<Object> list = new ArrayList<>(frames.length);
+        for (Object frame : frames) {
+            if (!(frame instanceof WebElement || frame instanceof Integer || frame instanceof String)) {
+                throw new IllegalArgumentException("Unsupported frame: " + frame);
+            }
+            list.add(frame);
+        }
+        return list;
+    }
+
+    private static class Scope {
+        private final List<Object> path;
+        private final boolean batch;
+
+        private Scope(List<Object> path, boolean batch) {
+            this.path = path;
+            this.batch = batch;
+        }
+    }
+}
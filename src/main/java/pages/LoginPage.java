@@ -4,6 +4,10 @@ import io.qameta.allure.Step;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.FindBy;
+import selenium.SessionStateCache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class LoginPage extends BasePage {
     @FindBy(name = "user-name")
@@ -21,8 +25,24 @@ public class LoginPage extends BasePage {
 
     @Step
     public void UserLogin(String user, String pwd) {
-        setValue(username, user);
-        setValue(password, pwd);
+        Map<WebElement, String> values = new LinkedHashMap<>();
+        values.put(username, user);
+        values.put(password, pwd);
+        fillForm(values);
         loginButton.click();
     }
+
+    /**
+     * Logs in with the cookies and storage of an earlier login of the same user and password when possible.
+     * Use {@link #UserLogin(String, String)} in tests that cover the login itself.
+     *
+     * @param user
+     * @param pwd
+     */
+    @Step
+    public void login(String user, String pwd) {
+        SessionStateCache.getInstance().login(driver, user, pwd, () -> UserLogin(user, pwd));
+        // A restored login navigates without a click, which the element index doesn't see.
+        markPageChanged();
+    }
 }
@@ -3,11 +3,8 @@ package pages;
 import io.qameta.allure.Step;
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.FindBy;
 
-import java.util.List;
-
 public class ProductsPage extends BasePage {
     private final By addToCartButtons = By.cssSelector(".inventory_item button");
     private final By cartIcon = By.id("shopping_cart_container");
@@ -18,13 +15,10 @@ public class ProductsPage extends BasePage {
 
     @Step
     public void addItemsToCart() {
-        List<WebElement> items = driver.findElements(addToCartButtons);
-        for (WebElement item : items) {
-            item.click();
-        }
+        clickAll(addToCartButtons);
     }
 
     public void goToCart() {
-        driver.findElement(cartIcon).click();
+        findElement(cartIcon).click();
     }
 }
@@ -0,0 +1,187 @@
+package pages.binding;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import utils.TestParameters;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the elements with an id, name or data-test attribute in the current document, so locating them
+ * doesn't need a WebDriver command.
+ * The index is collected by one script, which also installs a MutationObserver that marks it dirty when elements
+ * are added, removed or renamed. After a command that can change the page, e.g. a click, the next lookup checks
+ * the dirty flag and collects the index again in the same script call when needed.
+ * Command line usage:
+ * -DelementIndex=off      Locate every element with a WebDriver command
+ */
+public class ElementIndex {
+    private static final boolean enabled = !TestParameters.getParameter("elementIndex", "on").equals("off");
+    private static final Map<WebDriver, ElementIndex> indexes = Collections.synchronizedMap(new WeakHashMap<>());
+    // Very large pages are not indexed, because collecting them costs more than it saves.
+    private static final int MAX_ELEMENTS = 5000;
+    private static final Pattern DATA_TEST_SELECTOR = Pattern.compile("By\\.cssSelector: \\[data-test=(['\"]?)([^'\"\\]]+)\\1]");
+    private static final String INDEX_SCRIPT = ""
+            + "var index = window.__elementIndex;"
+            + "if (index && index.token === arguments[0] && !index.dirty) {"
+            + "  return null;"
+            + "}"
+            + "if (!index) {"
+            + "  index = window.__elementIndex = {};"
+            + "  new MutationObserver(function () { index.dirty = true; }).observe(document.documentElement, {"
+            + "    subtree: true, childList: true, attributes: true, attributeFilter: ['id', 'name', 'data-test']"
+            + "  });"
+            + "}"
+            + "index.token = String(Date.now()) + Math.random();"
+            + "index.dirty = false;"
+            + "var elements = document.querySelectorAll('[id],[name],[data-test]');"
+            + "if (elements.length > " + MAX_ELEMENTS + ") {"
+            + "  return [index.token, {}, {}, {}];"
+            + "}"
+            + "var ids = {}, names = {}, tests = {};"
+            + "for (var i = 0; i < elements.length; i++) {"
+            + "  var e = elements[i], name = e.getAttribute('name'), test = e.getAttribute('data-test');"
+            // The first element in document order wins, like findElement.
+            + "  if (e.id && !(e.id in ids)) { ids[e.id] = e; }"
+            + "  if (name && !(name in names)) { names[name] = e; }"
+            + "  if (test && !(test in tests)) { tests[test] = e; }"
+            + "}"
+            + "return [index.token, ids, names, tests];";
+
+    private static final AtomicLong lookups = new AtomicLong();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong scripts = new AtomicLong();
+    private static final AtomicLong rebuilds = new AtomicLong();
+    private static final AtomicLong staleRetries = new AtomicLong();
+
+    private final JavascriptExecutor driver;
+    private String token;
+    private boolean verified;
+    private Map<String, Object> ids = Collections.emptyMap();
+    private Map<String, Object> names = Collections.emptyMap();
+    private Map<String, Object> dataTests = Collections.emptyMap();
+
+    private ElementIndex(JavascriptExecutor driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Returns the index for a driver.
+     *
+     * @param searchContext
+     * @return null when the index is switched off or the search context is not a driver, e.g. an element.
+     */
+    public static ElementIndex forSearchContext(SearchContext searchContext) {
+        if (!enabled || !(searchContext instanceof WebDriver) || !(searchContext instanceof JavascriptExecutor)) {
+            return null;
+        }
+        return indexes.computeIfAbsent((WebDriver) searchContext, driver -> new ElementIndex((JavascriptExecutor) driver));
+    }
+
+    /**
+     * Returns the element for an id, name or data-test locator.
+     *
+     * @param by
+     * @return null when the locator can't be resolved from the index. The caller must then locate the element itself.
+     */
+    public synchronized WebElement lookup(By by) {
+        String locator = by.toString();
+        Matcher dataTest = DATA_TEST_SELECTOR.matcher(locator);
+        String attribute;
+        String key;
+        if (locator.startsWith("By.id: ")) {
+            attribute = "id";
+            key = locator.substring("By.id: ".length());
+        } else if (locator.startsWith("By.name: ")) {
+            attribute = "name";
+            key = locator.substring("By.name: ".length());
+        } else if (dataTest.matches()) {
+            attribute = "data-test";
+            key = dataTest.group(2);
+        } else {
+            return null;
+        }
+
+        lookups.incrementAndGet();
+        if (!verified && !refresh()) {
+            return null;
+        }
+        Map<String, Object> elements = attribute.equals("id") ? ids : attribute.equals("name") ? names : dataTests;
+        Object element = elements.get(key);
+        if (element instanceof WebElement) {
+            hits.incrementAndGet();
+            return (WebElement) element;
+        }
+        return null;
+    }
+
+    /**
+     * Checks the dirty flag before the next lookup. Called after commands that can change the page.
+     */
+    public synchronized void markUnverified() {
+        verified = false;
+    }
+
+    /**
+     * Collects the index again before the next lookup, e.g. after switching frames or when an element was stale.
+     */
+    public synchronized void invalidate() {
+        token = null;
+        verified = false;
+    }
+
+    static void recordStaleRetry() {
+        staleRetries.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of WebDriver commands the index saved.
+     * Without the index every lookup is a command. With the index the commands are the index scripts,
+     * the lookups that were not in the index, and the retries after a stale element.
+     *
+     * @return
+     */
+    public static String getStatistics() {
+        long commands = scripts.get() + (lookups.get() - hits.get()) + staleRetries.get();
+        return "Lookups: " + lookups.get() + "\n"
+                + "Resolved from the index: " + hits.get() + "\n"
+                + "Index scripts: " + scripts.get() + " (" + rebuilds.get() + " collected)\n"
+                + "Stale element retries: " + staleRetries.get() + "\n"
+                + "Commands saved: " + (lookups.get() - commands);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean refresh() {
+        scripts.incrementAndGet();
+        Object result;
+        try {
+            result = driver.executeScript(INDEX_SCRIPT, token);
+        } catch (WebDriverException e) {
+            // E.g. an alert is open. Lookups go to the driver until the next refresh.
+            ids = names = dataTests = Collections.emptyMap();
+            token = null;
+            return false;
+        }
+        if (result != null) {
+            List<Object> index = (List<Object>) result;
+            rebuilds.incrementAndGet();
+            token = (String) index.get(0);
+            ids = new HashMap<>((Map<String, Object>) index.get(1));
+            names = new HashMap<>((Map<String, Object>) index.get(2));
+            dataTests = new HashMap<>((Map<String, Object>) index.get(3));
+        }
+        verified = true;
+        return true;
+    }
+}
@@ -0,0 +1,257 @@
+package pages.binding;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsElement;
+import org.openqa.selenium.interactions.Locatable;
+import org.openqa.selenium.support.pagefactory.ElementLocator;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Creates the same lazy element proxies as {@link org.openqa.selenium.support.PageFactory}, without reading annotations.
+ * Single elements are located through the {@link ElementIndex} when possible. Commands that can change the page are
+ * reported to the index, also for the elements found inside a proxied element.
+ */
+public class Elements {
+    private static final ClassLoader CLASS_LOADER = Elements.class.getClassLoader();
+    // Commands that can run page scripts, and so change the page.
+    private static final Set<String> CHANGING_COMMANDS = new HashSet<>(Arrays.asList("click", "submit", "sendKeys", "clear"));
+
+    /**
+     * @param owner         The page object class, for the {@link LocatorProfiler}.
+     * @param searchContext
+     * @param by
+     * @param cacheLookup
+     * @return
+     */
+    public static WebElement element(Class<?> owner, SearchContext searchContext, By by, boolean cacheLookup) {
+        Locator locator = new Locator(owner, searchContext, by, cacheLookup);
+        return proxy(new ElementHandler(owner, locator, locator.index, null));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<WebElement> list(Class<?> owner, SearchContext searchContext, By by, boolean cacheLookup) {
+        return (List<WebElement>) Proxy.newProxyInstance(CLASS_LOADER,
+                new Class<?>[]{List.class},
+                new ListHandler(new Locator(owner, searchContext, by, cacheLookup)));
+    }
+
+    /**
+     * Locates an element now, like {@link SearchContext#findElement(By)}, but through the index.
+     *
+     * @param owner         The page object class, for the {@link LocatorProfiler}.
+     * @param searchContext
+     * @param by
+     * @return A proxy that locates the element again when it was taken from the index and has become stale.
+     */
+    public static WebElement find(Class<?> owner, SearchContext searchContext, By by) {
+        Locator locator = new Locator(owner, searchContext, by, false);
+        return proxy(new ElementHandler(owner, locator, locator.index, locator.findElement()));
+    }
+
+    /**
+     * Locates elements now, like {@link SearchContext#findElements(By)}.
+     * The index is not used for lists, but commands on the elements are reported to it.
+     *
+     * @param owner         The page object class, for the {@link LocatorProfiler}.
+     * @param searchContext
+     * @param by
+     * @return
+     */
+    public static List<WebElement> findAll(Class<?> owner, SearchContext searchContext, By by) {
+        List<WebElement> elements = LocatorProfiler.profile(owner, by, () -> searchContext.findElements(by), List::size);
+        return track(elements, ElementIndex.forSearchContext(searchContext), owner);
+    }
+
+    private static WebElement proxy(InvocationHandler handler) {
+        return (WebElement) Proxy.newProxyInstance(CLASS_LOADER,
+                new Class<?>[]{WebElement.class, WrapsElement.class, Locatable.class}, handler);
+    }
+
+    private static List<WebElement> track(List<WebElement> elements, ElementIndex index, Class<?> owner) {
+        if (index == null && !LocatorProfiler.isEnabled()) {
+            return elements;
+        }
+        List<WebElement> tracked = new ArrayList<>(elements.size());
+        for (WebElement element : elements) {
+            tracked.add(proxy(new ElementHandler(owner, null, index, element)));
+        }
+        return tracked;
+    }
+
+    /**
+     * Same behaviour as {@link org.openqa.selenium.support.pagefactory.internal.LocatingElementHandler},
+     * plus one retry when an element taken from the index is stale.
+     * Lookups inside the element are profiled for the page object class.
+     */
+    private static class ElementHandler implements InvocationHandler {
+        private final Class<?> owner;
+        // Null for elements that were found inside another element.
+        private final Locator locator;
+        // Null when the index is disabled.
+        private final ElementIndex index;
+        // Null for lazy proxies, which locate the element on every call.
+        private WebElement element;
+
+        private ElementHandler(Class<?> owner, Locator locator, ElementIndex index, WebElement element) {
+            this.owner = owner;
+            this.locator = locator;
+            this.index = index;
+            this.element = element;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            WebElement target;
+            try {
+                target = element != null ? element : locator.findElement();
+            } catch (NoSuchElementException e) {
+                if (method.getName().equals("toString")) {
+                    return "Proxy element for: " + locator;
+                }
+                throw e;
+            }
+            if (method.getName().equals("getWrappedElement")) {
+                return target;
+            }
+
+            Object result;
+            try {
+                result = call(target, method, args);
+            } catch (StaleElementReferenceException e) {
+                if (locator == null || !locator.indexed) {
+                    throw e;
+                }
+                // The page changed since the index was collected.
+                ElementIndex.recordStaleRetry();
+                index.invalidate();
+                locator.cachedElement = null;
+                target = locator.findElement();
+                if (element != null) {
+                    element = target;
+                }
+                result = call(target, method, args);
+            }
+
+            if (index != null && CHANGING_COMMANDS.contains(method.getName())) {
+                index.markUnverified();
+            }
+            if (index == null && !LocatorProfiler.isEnabled()) {
+                return result;
+            }
+            if (method.getName().equals("findElement")) {
+                return proxy(new ElementHandler(owner, null, index, (WebElement) result));
+            }
+            if (method.getName().equals("findElements")) {
+                return track((List<WebElement>) result, index, owner);
+            }
+            return result;
+        }
+
+        private Object call(WebElement target, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("findElement")) {
+                By by = (By) args[0];
+                return LocatorProfiler.profileElement(owner, target, by, () -> target.findElement(by));
+            }
+            if (method.getName().equals("findElements")) {
+                By by = (By) args[0];
+                return LocatorProfiler.profile(owner, by, () -> target.findElements(by), List::size);
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Same behaviour as {@link org.openqa.selenium.support.pagefactory.internal.LocatingElementListHandler}.
+     */
+    private static class ListHandler implements InvocationHandler {
+        private final Locator locator;
+
+        private ListHandler(Locator locator) {
+            this.locator = locator;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            List<WebElement> elements = track(locator.findElements(), locator.index, locator.owner);
+            try {
+                return method.invoke(elements, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Same behaviour as {@link org.openqa.selenium.support.pagefactory.DefaultElementLocator}.
+     */
+    private static class Locator implements ElementLocator {
+        private final Class<?> owner;
+        private final SearchContext searchContext;
+        private final By by;
+        private final boolean cacheLookup;
+        private final ElementIndex index;
+        // Whether the last element came from the index.
+        private boolean indexed;
+        private WebElement cachedElement;
+        private List<WebElement> cachedElements;
+
+        private Locator(Class<?> owner, SearchContext searchContext, By by, boolean cacheLookup) {
+            this.owner = owner;
+            this.searchContext = searchContext;
+            this.by = by;
+            this.cacheLookup = cacheLookup;
+            this.index = ElementIndex.forSearchContext(searchContext);
+        }
+
+        @Override
+        public WebElement findElement() {
+            if (cachedElement != null) {
+                return cachedElement;
+            }
+            WebElement element = index == null ? null : index.lookup(by);
+            indexed = element != null;
+            if (element == null) {
+                element = LocatorProfiler.profileElement(owner, searchContext, by, () -> searchContext.findElement(by));
+            }
+            if (cacheLookup) {
+                cachedElement = element;
+            }
+            return element;
+        }
+
+        @Override
+        public List<WebElement> findElements() {
+            if (cachedElements != null) {
+                return cachedElements;
+            }
+            List<WebElement> elements = LocatorProfiler.profile(owner, by, () -> searchContext.findElements(by), List::size);
+            if (cacheLookup) {
+                cachedElements = elements;
+            }
+            return elements;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + " '" + by + "'";
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package pages.binding;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriverException;
+import utils.LatencyStats;
+import utils.TestParameters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Records the lookup latency and match count of every locator per page object class.
+ * Locators are flagged as slow when their mean latency is well above the median of all locators, and as ambiguous
+ * when a single element lookup matches more than one element. XPath locators get an equivalent CSS selector
+ * when there is one.
+ * Command line usage:
+ * -DlocatorProfile                                  Profile the locators
+ * -DlocatorReport=target/locator-profile.json      Location of the JSON report
+ */
+public class LocatorProfiler {
+    private static final boolean enabled = System.getProperty("locatorProfile") != null;
+    // Slow means this many times the median mean latency, and at least the minimum.
+    private static final double SLOW_FACTOR = 2;
+    private static final double SLOW_MINIMUM_MILLIS = 20;
+    private static final Map<String, Map<String, LocatorStats>> pages = new ConcurrentHashMap<>();
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Times a single element lookup. The first lookup of each locator also counts all matches, to find ambiguous locators.
+     *
+     * @param owner         The page object class.
+     * @param searchContext
+     * @param by
+     * @param lookup
+     * @param <T>
+     * @return The lookup result.
+     */
+    public static <T> T profileElement(Class<?> owner, SearchContext searchContext, By by, Supplier<T> lookup) {
+        if (!enabled) {
+            return lookup.get();
+        }
+        LocatorStats stats = getStats(owner, by);
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = lookup.get();
+        } catch (WebDriverException e) {
+            stats.record(System.nanoTime() - start, 0);
+            throw e;
+        }
+        stats.record(System.nanoTime() - start, 1);
+        if (stats.countedMatches.compareAndSet(-1, 0)) {
+            try {
+                stats.countedMatches.set(searchContext.findElements(by).size());
+            } catch (WebDriverException e) {
+                stats.countedMatches.set(-1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Times a lookup that returns several matches.
+     *
+     * @param owner   The page object class.
+     * @param by
+     * @param lookup
+     * @param matches Counts the matches in the result.
+     * @param <T>
+     * @return The lookup result.
+     */
+    public static <T> T profile(Class<?> owner, By by, Supplier<T> lookup, ToIntFunction<T> matches) {
+        if (!enabled) {
+            return lookup.get();
+        }
+        LocatorStats stats = getStats(owner, by);
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = lookup.get();
+        } catch (WebDriverException e) {
+            stats.record(System.nanoTime() - start, 0);
+            throw e;
+        }
+        stats.record(System.nanoTime() - start, matches.applyAsInt(result));
+        return result;
+    }
+
+    /**
+     * Returns the report per page object class.
+     *
+     * @return Page class names mapped to the JSON report for that class.
+     */
+    public static Map<String, String> getReports() {
+        Map<String, String> reports = new TreeMap<>();
+        getReport().forEach((page, locators) -> reports.put(page, toJson(locators)));
+        return reports;
+    }
+
+    /**
+     * Writes the report of all page object classes to the JSON file.
+     */
+    public static void writeReport() {
+        Path file = Paths.get(TestParameters.getParameter("locatorReport", "target/locator-profile.json"));
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.writeString(file, toJson(getReport()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write locator report", e);
+        }
+    }
+
+    private static Map<String, Map<String, Object>> getReport() {
+        List<Double> means = new ArrayList<>();
+        pages.values().forEach(locators -> locators.values().forEach(stats -> means.add(stats.latency.getMeanMillis())));
+        Collections.sort(means);
+        double median = means.isEmpty() ? 0 : means.get(means.size() / 2);
+        double slowMillis = Math.max(SLOW_MINIMUM_MILLIS, median * SLOW_FACTOR);
+
+        Map<String, Map<String, Object>> report = new TreeMap<>();
+        pages.forEach((page, locators) -> {
+            Map<String, Object> pageReport = new TreeMap<>();
+            locators.forEach((locator, stats) -> pageReport.put(locator, stats.toMap(slowMillis)));
+            report.put(page, pageReport);
+        });
+        return report;
+    }
+
+    private static LocatorStats getStats(Class<?> owner, By by) {
+        return pages.computeIfAbsent(owner.getName(), name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(by.toString(), locator -> new LocatorStats(by));
+    }
+
+    private static String toJson(Object report) {
+        try {
+            return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(report);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class LocatorStats {
+        private final LatencyStats latency = new LatencyStats();
+        private final AtomicLong matches = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        // -1 until the matches of a single element locator are counted.
+        private final AtomicLong countedMatches = new AtomicLong(-1);
+        private final String css;
+
+        private LocatorStats(By by) {
+            String locator = by.toString();
+            css = locator.startsWith("By.xpath: ") ? XPathToCss.convert(locator.substring("By.xpath: ".length())) : null;
+        }
+
+        private void record(long nanos, int count) {
+            latency.record(nanos);
+            matches.addAndGet(count);
+            if (count == 0) {
+                misses.incrementAndGet();
+            }
+        }
+
+        private Map<String, Object> toMap(double slowMillis) {
+            Map<String, Object> map = new LinkedHashMap<>(latency.toMap());
+            map.put("matches", latency.getCount() == 0 ? 0 : (double) matches.get() / latency.getCount());
+            map.put("notFound", misses.get());
+            List<String> flags = new ArrayList<>();
+            if (latency.getMeanMillis() > slowMillis) {
+                flags.add("slow");
+            }
+            if (countedMatches.get() > 1) {
+                flags.add("ambiguous: " + countedMatches.get() + " matches, the first one is used");
+            }
+            map.put("flags", flags);
+            if (css != null) {
+                map.put("css", css);
+            }
+            return map;
+        }
+    }
+}
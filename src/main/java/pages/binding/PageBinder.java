@@ -0,0 +1,14 @@
+package pages.binding;
+
+import org.openqa.selenium.SearchContext;
+
+/**
+ * Assigns the element proxies of the fields declared by a single page class.
+ * Implementations named {@code <Page>_Binder} are generated at compile time by
+ * {@link pages.binding.processor.PageBinderProcessor}.
+ *
+ * @param <T> The page class.
+ */
+public interface PageBinder<T> {
+    void bind(T page, SearchContext searchContext);
+}
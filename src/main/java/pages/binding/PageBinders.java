@@ -0,0 +1,138 @@
+package pages.binding;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.FindAll;
+import org.openqa.selenium.support.FindBy;
+import org.openqa.selenium.support.FindBys;
+import org.openqa.selenium.support.pagefactory.Annotations;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Initialises the element fields of page objects, as a replacement for {@link org.openqa.selenium.support.PageFactory#initElements}.
+ * Uses the binder generated for each page class, so constructing a page doesn't read annotations or look up fields.
+ * Classes without a generated binder, e.g. because they use {@code @FindBys}, use the field metadata that is read
+ * once per class instead.
+ */
+public class PageBinders {
+    private static final ClassValue<PageBinder<Object>> binders = new ClassValue<>() {
+        @Override
+        protected PageBinder<Object> computeValue(Class<?> type) {
+            return createBinder(type);
+        }
+    };
+
+    /**
+     * Binds the element fields of the page class and its superclasses.
+     *
+     * @param page
+     * @param searchContext Usually the web driver.
+     */
+    public static void bind(Object page, SearchContext searchContext) {
+        for (Class<?> type = page.getClass(); type != Object.class; type = type.getSuperclass()) {
+            binders.get(type).bind(page, searchContext);
+        }
+    }
+
+    /**
+     * Returns a handle to set a private field, for generated binders. Binders look the handle up once, so binding a
+     * page only costs the handle call.
+     *
+     * @param type The page class that declares the field.
+     * @param name
+     * @return
+     */
+    public static VarHandle privateField(Class<?> type, String name) {
+        try {
+            return MethodHandles.privateLookupIn(type, MethodHandles.lookup()).unreflectVarHandle(type.getDeclaredField(name));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to access " + type.getName() + "." + name, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PageBinder<Object> createBinder(Class<?> type) {
+        try {
+            Class<?> binderClass = Class.forName(type.getName() + "_Binder", true, type.getClassLoader());
+            return (PageBinder<Object>) binderClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return new ReflectiveBinder(type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create page binder for " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Follows the PageFactory rules: all WebElement and List<WebElement> fields are bound, and fields without
+     * an annotation are located by id or name.
+     */
+    private static class ReflectiveBinder implements PageBinder<Object> {
+        private final List<BoundField> fields = new ArrayList<>();
+
+        private ReflectiveBinder(Class<?> type) {
+            for (Field field : type.getDeclaredFields()) {
+                boolean list = isElementList(field);
+                if (field.getType() != WebElement.class && !list) {
+                    continue;
+                }
+                if (Modifier.isFinal(field.getModifiers()) || Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                Annotations annotations = new Annotations(field);
+                fields.add(new BoundField(field, annotations.buildBy(), annotations.isLookupCached(), list));
+            }
+        }
+
+        @Override
+        public void bind(Object page, SearchContext searchContext) {
+            for (BoundField field : fields) {
+                Object value = field.list
+                        ? Elements.list(page.getClass(), searchContext, field.by, field.cacheLookup)
+                        : Elements.element(page.getClass(), searchContext, field.by, field.cacheLookup);
+                try {
+                    field.field.set(page, value);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Unable to bind " + field.field, e);
+                }
+            }
+        }
+
+        private static boolean isElementList(Field field) {
+            if (field.getType() != List.class) {
+                return false;
+            }
+            Type type = field.getGenericType();
+            if (!(type instanceof ParameterizedType)) {
+                return false;
+            }
+            Type elementType = ((ParameterizedType) type).getActualTypeArguments()[0];
+            // PageFactory only decorates lists that have a locator annotation.
+            return elementType == WebElement.class && (field.isAnnotationPresent(FindBy.class)
+                    || field.isAnnotationPresent(FindBys.class) || field.isAnnotationPresent(FindAll.class));
+        }
+    }
+
+    private static class BoundField {
+        private final Field field;
+        private final By by;
+        private final boolean cacheLookup;
+        private final boolean list;
+
+        private BoundField(Field field, By by, boolean cacheLookup, boolean list) {
+            this.field = field;
+            this.by = by;
+            this.cacheLookup = cacheLookup;
+            this.list = list;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package pages.binding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Converts simple XPath expressions to equivalent CSS selectors.
+ * Supported are child and descendant steps with a tag name or *, and predicates that test attributes,
+ * classes and positions. Anything else, e.g. text(), other axes or nested paths, has no CSS equivalent.
+ * Paths relative to the current node (.//) are scoped to it with :scope, so they are equivalent when searching from
+ * an element. Paths from the root (//) are only equivalent when searching from the page.
+ */
+public class XPathToCss {
+    private static final Pattern ATTRIBUTE_EXISTS = Pattern.compile("@([\\w-]+)");
+    // XPath string literals can't contain their own quote character.
+    private static final String LITERAL = "(?:'([^']*)'|\"([^\"]*)\")";
+    private static final Pattern ATTRIBUTE_EQUALS = Pattern.compile("@([\\w-]+)\\s*=\\s*" + LITERAL);
+    private static final Pattern ATTRIBUTE_FUNCTION = Pattern.compile("(contains|starts-with)\\(\\s*@([\\w-]+)\\s*,\\s*" + LITERAL + "\\s*\\)");
+    private static final Pattern CLASS_TOKEN = Pattern.compile(
+            "contains\\(\\s*concat\\(\\s*(['\"]) \\1\\s*,\\s*normalize-space\\(\\s*@class\\s*\\)\\s*,\\s*(['\"]) \\2\\s*\\)\\s*,\\s*(['\"]) ([\\w-]+) \\3\\s*\\)");
+    private static final Pattern POSITION = Pattern.compile("\\d+");
+    private static final Pattern NAME = Pattern.compile("\\*|[A-Za-z][\\w-]*");
+    private static final Pattern IDENTIFIER = Pattern.compile("-?[A-Za-z_][\\w-]*");
+
+    /**
+     * @param xpath
+     * @return The CSS selector, or null when there is no equivalent.
+     */
+    public static String convert(String xpath) {
+        String path = xpath.trim();
+        StringBuilder css = new StringBuilder();
+        if (path.startsWith(".//")) {
+            // Without :scope the first step could match an ancestor of the element searched from.
+            css.append(":scope ");
+            path = path.substring(3);
+        } else if (path.startsWith("//")) {
+            path = path.substring(2);
+        } else {
+            // Absolute paths and paths relative to the current node have no simple equivalent.
+            return null;
+        }
+
+        List<String> steps = new ArrayList<>();
+        List<String> separators = new ArrayList<>();
+        if (!split(path, steps, separators)) {
+            return null;
+        }
+        for (int i = 0; i < steps.size(); i++) {
+            String step = convertStep(steps.get(i));
+            if (step == null) {
+                return null;
+            }
+            if (i > 0) {
+                css.append(separators.get(i - 1).equals("//") ? " " : " > ");
+            }
+            css.append(step);
+        }
+        return css.toString();
+    }
+
+    /**
+     * Splits a path into steps on the slashes outside predicates and quotes.
+     */
+    private static boolean split(String path, List<String> steps, List<String> separators) {
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char character = path.charAt(i);
+            if (quote != 0) {
+                if (character == quote) {
+                    quote = 0;
+                }
+            } else if (character == '\'' || character == '"') {
+                quote = character;
+            } else if (character == '[') {
+                depth++;
+            } else if (character == ']') {
+                depth--;
+            } else if (character == '/' && depth == 0) {
+                steps.add(path.substring(start, i));
+                boolean descendant = i + 1 < path.length() && path.charAt(i + 1) == '/';
+                separators.add(descendant ? "//" : "/");
+                if (descendant) {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        steps.add(path.substring(start));
+        return quote == 0 && depth == 0;
+    }
+
+    private static String convertStep(String step) {
+        int predicateStart = step.indexOf('[');
+        String name = predicateStart < 0 ? step : step.substring(0, predicateStart);
+        if (!NAME.matcher(name).matches()) {
+            return null;
+        }
+        StringBuilder css = new StringBuilder(name.equals("*") ? "" : name);
+
+        List<String> predicates = new ArrayList<>();
+        if (predicateStart >= 0 && !splitPredicates(step.substring(predicateStart), predicates)) {
+            return null;
+        }
+        for (String predicate : predicates) {
+            for (String condition : splitConditions(predicate)) {
+                String converted = convertCondition(condition.trim(), name);
+                if (converted == null) {
+                    return null;
+                }
+                css.append(converted);
+            }
+        }
+        return css.length() == 0 ? "*" : css.toString();
+    }
+
+    private static boolean splitPredicates(String text, List<String> predicates) {
+        int depth = 0;
+        char quote = 0;
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char character = text.charAt(i);
+            if (quote != 0) {
+                if (character == quote) {
+                    quote = 0;
+                }
+            } else if (character == '\'' || character == '"') {
+                quote = character;
+            } else if (character == '[') {
+                if (depth == 0) {
+                    start = i + 1;
+                }
+                depth++;
+            } else if (character == ']') {
+                depth--;
+                if (depth == 0) {
+                    predicates.add(text.substring(start, i));
+                }
+            } else if (depth == 0) {
+                return false;
+            }
+        }
+        return depth == 0 && quote == 0;
+    }
+
+    /**
+     * Splits a predicate on the "and" operators outside quotes and parentheses.
+     */
+    private static List<String> splitConditions(String predicate) {
+        List<String> conditions = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < predicate.length(); i++) {
+            char character = predicate.charAt(i);
+            if (quote != 0) {
+                if (character == quote) {
+                    quote = 0;
+                }
+            } else if (character == '\'' || character == '"') {
+                quote = character;
+            } else if (character == '(') {
+                depth++;
+            } else if (character == ')') {
+                depth--;
+            } else if (depth == 0 && Character.isWhitespace(character) && predicate.startsWith("and", i + 1)
+                    && i + 4 < predicate.length() && Character.isWhitespace(predicate.charAt(i + 4))) {
+                conditions.add(predicate.substring(start, i));
+                i += 4;
+                start = i + 1;
+            }
+        }
+        conditions.add(predicate.substring(start));
+        return conditions;
+    }
+
+    private static String convertCondition(String condition, String name) {
+        Matcher matcher = CLASS_TOKEN.matcher(condition);
+        if (matcher.matches()) {
+            return "." + matcher.group(4);
+        }
+        matcher = ATTRIBUTE_EQUALS.matcher(condition);
+        if (matcher.matches()) {
+            String attribute = matcher.group(1);
+            String value = literal(matcher, 2);
+            if (attribute.equals("id") && IDENTIFIER.matcher(value).matches()) {
+                return "#" + value;
+            }
+            return "[" + attribute + "=" + quote(value) + "]";
+        }
+        matcher = ATTRIBUTE_FUNCTION.matcher(condition);
+        if (matcher.matches()) {
+            return "[" + matcher.group(2) + (matcher.group(1).equals("contains") ? "*=" : "^=") + quote(literal(matcher, 3)) + "]";
+        }
+        if (ATTRIBUTE_EXISTS.matcher(condition).matches()) {
+            return "[" + condition.substring(1) + "]";
+        }
+        // A position counts siblings with the same name, like nth-of-type.
+        if (POSITION.matcher(condition).matches() && !name.equals("*")) {
+            return ":nth-of-type(" + condition + ")";
+        }
+        return null;
+    }
+
+    private static String literal(Matcher matcher, int group) {
+        return matcher.group(group) != null ? matcher.group(group) : matcher.group(group + 1);
+    }
+
+    /**
+     * Quotes a value as a CSS string. Backslashes, line breaks and the quote character are escaped.
+     */
+    static String quote(String value) {
+        char quote = value.contains("'") ? '"' : '\'';
+        StringBuilder css = new StringBuilder().append(quote);
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character == '\\' || character == quote) {
+                css.append('\\').append(character);
+            } else if (character == '\n' || character == '\r' || character == '\f') {
+                css.append('\\').append(Integer.toHexString(character)).append(' ');
+            } else {
+                css.append(character);
+            }
+        }
+        return css.append(quote).toString();
+    }
+}
@@ -0,0 +1,228 @@
+package pages.binding.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a {@code <Page>_Binder} class for each page class with {@code @FindBy} fields.
+ * The binder assigns the element proxies directly, so {@link pages.binding.PageBinders} doesn't need reflection.
+ * Private fields are set through a VarHandle that the binder looks up once.
+ * Classes the binder can't assign, e.g. with final fields or {@code @FindBys}, are skipped and use the reflective fallback.
+ * <p>
+ * This class only depends on the JDK, because it is compiled and run before the rest of the project.
+ */
+@SupportedAnnotationTypes("org.openqa.selenium.support.FindBy")
+public class PageBinderProcessor extends AbstractProcessor {
+    private static final String FIND_BY = "org.openqa.selenium.support.FindBy";
+    private static final String CACHE_LOOKUP = "org.openqa.selenium.support.CacheLookup";
+    private static final String WEB_ELEMENT = "org.openqa.selenium.WebElement";
+    private static final Map<String, String> BY_METHODS = new HashMap<>();
+
+    static {
+        BY_METHODS.put("id", "id");
+        BY_METHODS.put("name", "name");
+        BY_METHODS.put("className", "className");
+        BY_METHODS.put("css", "cssSelector");
+        BY_METHODS.put("tagName", "tagName");
+        BY_METHODS.put("linkText", "linkText");
+        BY_METHODS.put("partialLinkText", "partialLinkText");
+        BY_METHODS.put("xpath", "xpath");
+        // The values of the How enum.
+        BY_METHODS.put("ID", "id");
+        BY_METHODS.put("NAME", "name");
+        BY_METHODS.put("CLASS_NAME", "className");
+        BY_METHODS.put("CSS", "cssSelector");
+        BY_METHODS.put("TAG_NAME", "tagName");
+        BY_METHODS.put("LINK_TEXT", "linkText");
+        BY_METHODS.put("PARTIAL_LINK_TEXT", "partialLinkText");
+        BY_METHODS.put("XPATH", "xpath");
+    }
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> pages = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element field : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (field.getKind() == ElementKind.FIELD) {
+                    pages.add((TypeElement) field.getEnclosingElement());
+                }
+            }
+        }
+        for (TypeElement page : pages) {
+            if (generated.add(page.getQualifiedName().toString())) {
+                generate(page);
+            }
+        }
+        // Other processors may also handle @FindBy.
+        return false;
+    }
+
+    private void generate(TypeElement page) {
+        if (page.getNestingKind() != NestingKind.TOP_LEVEL || !page.getTypeParameters().isEmpty()) {
+            skip(page, "only top level classes without type parameters are supported");
+            return;
+        }
+
+        StringBuilder handles = new StringBuilder();
+        StringBuilder body = new StringBuilder();
+        for (Element member : page.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.FIELD) {
+                continue;
+            }
+            VariableElement field = (VariableElement) member;
+            boolean list = isElementList(field.asType());
+            AnnotationMirror findBy = getAnnotation(field, FIND_BY);
+            if (!isWebElement(field.asType()) && !(list && findBy != null)) {
+                continue;
+            }
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.STATIC)) {
+                skip(page, "field " + field.getSimpleName() + " is final or static");
+                return;
+            }
+            for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+                String name = annotation.getAnnotationType().toString();
+                if (name.startsWith("org.openqa.selenium.support.") && !name.equals(FIND_BY) && !name.equals(CACHE_LOOKUP)) {
+                    skip(page, "field " + field.getSimpleName() + " uses " + name);
+                    return;
+                }
+            }
+
+            String by = findBy == null
+                    ? "new org.openqa.selenium.support.ByIdOrName(" + quote(field.getSimpleName().toString()) + ")"
+                    : buildBy(findBy);
+            if (by == null) {
+                skip(page, "field " + field.getSimpleName() + " doesn't have exactly one locator");
+                return;
+            }
+            String value = "pages.binding.Elements." + (list ? "list" : "element") + "(page.getClass(), searchContext, "
+                    + by + ", " + (getAnnotation(field, CACHE_LOOKUP) != null) + ")";
+            String name = field.getSimpleName().toString();
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                handles.append("    private static final java.lang.invoke.VarHandle FIELD_").append(name)
+                        .append(" = pages.binding.PageBinders.privateField(").append(page.getQualifiedName())
+                        .append(".class, ").append(quote(name)).append(");\n");
+                body.append("        FIELD_").append(name).append(".set(page, ").append(value).append(");\n");
+            } else {
+                body.append("        page.").append(name).append(" = ").append(value).append(";\n");
+            }
+        }
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(page).getQualifiedName().toString();
+        String binderName = page.getSimpleName() + "_Binder";
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n")
+                .append("public final class ").append(binderName)
+                .append(" implements pages.binding.PageBinder<").append(page.getQualifiedName()).append("> {\n")
+                .append(handles)
+                .append(handles.length() > 0 ? "\n" : "")
+                .append("    @Override\n")
+                .append("    public void bind(").append(page.getQualifiedName())
+                .append(" page, org.openqa.selenium.SearchContext searchContext) {\n")
+                .append(body)
+                .append("    }\n")
+                .append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? binderName : packageName + "." + binderName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, page).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write " + qualifiedName, e);
+        }
+    }
+
+    /**
+     * Returns the By expression for a FindBy annotation, or null when it doesn't have exactly one locator.
+     */
+    private String buildBy(AnnotationMirror findBy) {
+        String how = null;
+        String using = null;
+        String by = null;
+        int locators = 0;
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : findBy.getElementValues().entrySet()) {
+            String name = entry.getKey().getSimpleName().toString();
+            Object value = entry.getValue().getValue();
+            if (name.equals("how")) {
+                how = value.toString();
+            } else if (name.equals("using")) {
+                using = value.toString();
+            } else if (BY_METHODS.containsKey(name) && !value.toString().isEmpty()) {
+                by = "org.openqa.selenium.By." + BY_METHODS.get(name) + "(" + quote(value.toString()) + ")";
+                locators++;
+            }
+        }
+        if (how != null && !how.equals("UNSET") && using != null) {
+            by = how.equals("ID_OR_NAME")
+                    ? "new org.openqa.selenium.support.ByIdOrName(" + quote(using) + ")"
+                    : BY_METHODS.containsKey(how) ? "org.openqa.selenium.By." + BY_METHODS.get(how) + "(" + quote(using) + ")" : null;
+            locators++;
+        }
+        return locators == 1 ? by : null;
+    }
+
+    private boolean isWebElement(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && type.toString().equals(WEB_ELEMENT);
+    }
+
+    private boolean isElementList(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        DeclaredType declaredType = (DeclaredType) type;
+        List<? extends TypeMirror> arguments = declaredType.getTypeArguments();
+        return declaredType.asElement().toString().equals("java.util.List")
+                && arguments.size() == 1 && isWebElement(arguments.get(0));
+    }
+
+    private static AnnotationMirror getAnnotation(Element element, String annotationType) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().toString().equals(annotationType)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private String quote(String value) {
+        return processingEnv.getElementUtils().getConstantExpression(value);
+    }
+
+    private void skip(TypeElement page, String reason) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                "No page binder generated for " + page.getQualifiedName() + ", " + reason, page);
+    }
+}
@@ -0,0 +1,120 @@
+package selenium;
+
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.PageLoadStrategy;
+import org.openqa.selenium.chromium.ChromiumOptions;
+import org.openqa.selenium.firefox.FirefoxOptions;
+import org.openqa.selenium.remote.AbstractDriverOptions;
+import utils.TestParameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Named sets of browser tuning options, applied the same way to every web driver type.
+ * Command line usage:
+ * -DbrowserProfile=default   Browser defaults with a maximized window
+ * -DbrowserProfile=lean      Eager page loads, no images, web fonts, extensions, background throttling or analytics
+ * -DblockedHosts=a.com,b.com Additional hosts to block with the lean profile
+ */
+public enum BrowserProfile {
+    DEFAULT,
+    LEAN;
+
+    private static final Dimension WINDOW_SIZE = new Dimension(1920, 1080);
+    private static final List<String> BLOCKED_HOSTS = Arrays.asList(
+            "google-analytics.com",
+            "googletagmanager.com",
+            "doubleclick.net",
+            "connect.facebook.net",
+            "static.hotjar.com",
+            "cdn.segment.com",
+            "js-agent.newrelic.com",
+            "bam.nr-data.net",
+            "events.backtrace.io"
+    );
+
+    public static BrowserProfile current() {
+        String name = TestParameters.getParameter("browserProfile", "default");
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported browser profile: " + name);
+        }
+    }
+
+    public String getName() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * Returns the fixed window size of this profile.
+     *
+     * @return The window size, or null if the window should be maximized.
+     */
+    public Dimension getWindowSize() {
+        return this == LEAN ? WINDOW_SIZE : null;
+    }
+
+    public void apply(ChromiumOptions<?> options) {
+        applyCommon(options);
+        if (this != LEAN) {
+            return;
+        }
+        options.addArguments("--window-size=" + WINDOW_SIZE.getWidth() + "," + WINDOW_SIZE.getHeight());
+        options.addArguments("--disable-extensions");
+        options.addArguments("--disable-remote-fonts");
+        options.addArguments("--disable-background-timer-throttling");
+        options.addArguments("--disable-backgrounding-occluded-windows");
+        options.addArguments("--disable-renderer-backgrounding");
+        options.addArguments("--disable-component-update");
+        options.addArguments("--host-resolver-rules=" + getBlockedHosts().stream()
+                .map(host -> "MAP " + host + " ~NOTFOUND, MAP *." + host + " ~NOTFOUND")
+                .collect(Collectors.joining(", ")));
+
+        Map<String, Object> prefs = new HashMap<>();
+        prefs.put("profile.managed_default_content_settings.images", 2);
+        options.setExperimentalOption("prefs", prefs);
+    }
+
+    public void apply(FirefoxOptions options) {
+        applyCommon(options);
+        if (this != LEAN) {
+            return;
+        }
+        options.addArguments("--width=" + WINDOW_SIZE.getWidth(), "--height=" + WINDOW_SIZE.getHeight());
+        options.addPreference("permissions.default.image", 2);
+        options.addPreference("gfx.downloadable_fonts.enabled", false);
+        options.addPreference("extensions.enabledScopes", 0);
+        options.addPreference("dom.timeout.enable_budget_timer_throttling", false);
+        // Firefox has no wildcard host rules, so blocked hosts are resolved to localhost instead.
+        options.addPreference("network.dns.localDomains", getBlockedHosts().stream()
+                .flatMap(host -> Arrays.asList(host, "www." + host).stream())
+                .collect(Collectors.joining(",")));
+    }
+
+    /**
+     * Applies the options supported by every browser, e.g. Safari.
+     *
+     * @param options
+     */
+    public void applyCommon(AbstractDriverOptions<?> options) {
+        if (this == LEAN) {
+            options.setPageLoadStrategy(PageLoadStrategy.EAGER);
+        }
+    }
+
+    private List<String> getBlockedHosts() {
+        List<String> hosts = new ArrayList<>(BLOCKED_HOSTS);
+        String extra = TestParameters.getParameter("blockedHosts", "");
+        if (!extra.equals("")) {
+            Collections.addAll(hosts, extra.split(","));
+        }
+        return hosts;
+    }
+}
@@ -0,0 +1,215 @@
+package selenium;
+
+import io.github.bonigarcia.wdm.WebDriverManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.TestParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves local web driver binaries once per JVM.
+ * Resolutions are stored in a checksummed on-disk cache, so parallel forks and later runs skip WebDriverManager.
+ * Command line usage:
+ * -DdriverMirror=/opt/drivers          Only use binaries from this directory, e.g. on machines without network access
+ * -DdriverCache=target/driver-cache    Location of the resolution cache
+ * -DdriverCacheHours=24                How long a cached resolution is trusted before WebDriverManager is asked again
+ */
+public class DriverBinaryResolver {
+    private static final Logger LOGGER = LoggerFactory.getLogger("DriverBinaryResolver");
+    private static final Map<String, String> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * Makes sure the driver binary for a browser is available and registered with Selenium.
+     *
+     * @param browser "chrome", "firefox" or "edge".
+     * @return The driver binary.
+     */
+    public static File resolve(String browser) {
+        String path = resolved.computeIfAbsent(browser, DriverBinaryResolver::resolveOnce);
+        System.setProperty(getSystemProperty(browser), path);
+        return new File(path);
+    }
+
+    private static String resolveOnce(String browser) {
+        String mirror = TestParameters.getParameter("driverMirror", "");
+        if (!mirror.equals("")) {
+            return resolveFromMirror(browser, Paths.get(mirror));
+        }
+
+        Path cacheDirectory = Paths.get(TestParameters.getParameter("driverCache", "target/driver-cache"));
+        try {
+            Files.createDirectories(cacheDirectory);
+            // Lock across forks, so only one of them asks WebDriverManager while the others wait for the result.
+            try (FileChannel channel = FileChannel.open(cacheDirectory.resolve(browser + ".lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    Path cacheFile = cacheDirectory.resolve(browser + ".properties");
+                    String cached = readCache(cacheFile);
+                    if (cached != null) {
+                        return cached;
+                    }
+
+                    WebDriverManager manager = getManager(browser);
+                    manager.setup();
+                    Path binary = manager.getDownloadedDriverPath() == null ? null : Paths.get(manager.getDownloadedDriverPath());
+                    if (binary == null || !Files.isRegularFile(binary)) {
+                        throw new IllegalStateException("WebDriverManager did not resolve a " + browser + " driver binary");
+                    }
+                    writeCache(cacheFile, binary);
+                    return binary.toString();
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to resolve " + browser + " driver binary", e);
+        }
+    }
+
+    private static String resolveFromMirror(String browser, Path mirror) {
+        Path binary = mirror.resolve(getBinaryName(browser));
+        if (!Files.isRegularFile(binary)) {
+            throw new IllegalStateException(String.format("Driver binary '%s' not found in mirror '%s'", binary.getFileName(), mirror));
+        }
+
+        // Verify the binary if the mirror provides a checksum file next to it.
+        Path checksumFile = mirror.resolve(binary.getFileName() + ".sha256");
+        if (Files.isRegularFile(checksumFile)) {
+            try {
+                String expected = Files.readString(checksumFile).trim().split("\\s+")[0];
+                if (!expected.equalsIgnoreCase(sha256(binary))) {
+                    throw new IllegalStateException("Checksum mismatch for driver binary " + binary);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to verify driver binary " + binary, e);
+            }
+        }
+        return binary.toString();
+    }
+
+    /**
+     * Returns the cached binary path if it is still valid.
+     *
+     * @param cacheFile
+     * @return The binary path, or null if the cache entry is missing, expired or does not match the binary anymore.
+     */
+    private static String readCache(Path cacheFile) throws IOException {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(cacheFile)) {
+            properties.load(input);
+        }
+
+        String path = properties.getProperty("path");
+        long resolvedAt = Long.parseLong(properties.getProperty("resolvedAt", "0"));
+        long maxAge = Duration.ofHours(Long.parseLong(TestParameters.getParameter("driverCacheHours", "24"))).toMillis();
+        if (path == null || System.currentTimeMillis() - resolvedAt > maxAge) {
+            return null;
+        }
+
+        Path binary = Paths.get(path);
+        if (!Files.isRegularFile(binary) || !sha256(binary).equals(properties.getProperty("sha256"))) {
+            LOGGER.warn("Cached driver binary {} is missing or changed, resolving again", binary);
+            return null;
+        }
+        return path;
+    }
+
+    private static void writeCache(Path cacheFile, Path binary) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("path", binary.toAbsolutePath().toString());
+        properties.setProperty("sha256", sha256(binary));
+        properties.setProperty("resolvedAt", String.valueOf(System.currentTimeMillis()));
+
+        // Write to a temporary file first, so a crashed fork never leaves a half written cache entry.
+        Path temporary = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temporary)) {
+            properties.store(output, "Resolved web driver binary");
+        }
+        Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static WebDriverManager getManager(String browser) {
+        switch (browser) {
+            case "chrome":
+                return WebDriverManager.chromedriver();
+            case "firefox":
+                return WebDriverManager.firefoxdriver();
+            case "edge":
+                return WebDriverManager.edgedriver();
+            default:
+                throw new IllegalArgumentException("Unsupported driver binary: " + browser);
+        }
+    }
+
+    private static String getSystemProperty(String browser) {
+        switch (browser) {
+            case "chrome":
+                return "webdriver.chrome.driver";
+            case "firefox":
+                return "webdriver.gecko.driver";
+            case "edge":
+                return "webdriver.edge.driver";
+            default:
+                throw new IllegalArgumentException("Unsupported driver binary: " + browser);
+        }
+    }
+
+    private static String getBinaryName(String browser) {
+        String extension = System.getProperty("os.name", "").toLowerCase().startsWith("windows") ? ".exe" : "";
+        switch (browser) {
+            case "chrome":
+                return "chromedriver" + extension;
+            case "firefox":
+                return "geckodriver" + extension;
+            case "edge":
+                return "msedgedriver" + extension;
+            default:
+                throw new IllegalArgumentException("Unsupported driver binary: " + browser);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package selenium;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.SessionNotCreatedException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.UnreachableBrowserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.TestParameters;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Routes new remote sessions to the least loaded of several Selenium Grid hubs.
+ * Command line usage:
+ * -DremoteHubs=http://grid1:4444/wd/hub,http://grid2:4444   Hubs to route to (default http://localhost:4444/wd/hub)
+ * -DhubMaxInFlight=4                                       Maximum number of concurrent new session requests per hub
+ */
+public class GridRouter {
+    private static final Logger LOGGER = LoggerFactory.getLogger("GridRouter");
+    private static final String DEFAULT_HUB_URL = "http://localhost:4444/wd/hub";
+    private static final int STATUS_TIMEOUT_MILLIS = 2000;
+    private static final long STATUS_MAX_AGE_MILLIS = 2000;
+    private static final long SESSION_QUEUE_TIMEOUT_SECONDS = 300;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static GridRouter instance;
+
+    private final List<Hub> hubs;
+    private final BiFunction<URL, Capabilities, RemoteWebDriver> sessionFactory;
+
+    public GridRouter(List<String> hubUrls, int maxInFlight) {
+        this(hubUrls, maxInFlight, RemoteWebDriver::new);
+    }
+
+    /**
+     * @param sessionFactory Starts a session on a hub, e.g. a stand-in for tests.
+     */
+    GridRouter(List<String> hubUrls, int maxInFlight, BiFunction<URL, Capabilities, RemoteWebDriver> sessionFactory) {
+        if (hubUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one remote hub must be specified");
+        }
+        hubs = hubUrls.stream().map(url -> new Hub(url.trim(), maxInFlight)).collect(Collectors.toList());
+        this.sessionFactory = sessionFactory;
+    }
+
+    public static synchronized GridRouter getInstance() {
+        if (instance == null) {
+            List<String> hubUrls = Arrays.asList(TestParameters.getParameter("remoteHubs", DEFAULT_HUB_URL).split(","));
+            int maxInFlight = Integer.parseInt(TestParameters.getParameter("hubMaxInFlight", "4"));
+            instance = new GridRouter(hubUrls, maxInFlight);
+        }
+        return instance;
+    }
+
+    /**
+     * Starts a new session on the least loaded hub, and fails over to the next hub if the session can't be created.
+     * When every remaining hub already has the maximum number of session requests in flight, the request waits for
+     * the best of them. Only hubs that can't be reached are taken out of rotation; a hub that rejects the session,
+     * e.g. because of the capabilities or a full session queue, stays in. Other errors, e.g. HTTP errors, check the
+     * status of the hub again.
+     *
+     * @param capabilities The browser options.
+     * @return
+     */
+    public RemoteWebDriver createSession(Capabilities capabilities) {
+        List<Hub> untried = rankHubs(capabilities == null ? null : capabilities.getBrowserName());
+        RuntimeException lastException = null;
+
+        while (!untried.isEmpty()) {
+            Hub hub = null;
+            for (Hub candidate : untried) {
+                if (candidate.inFlight.tryAcquire()) {
+                    hub = candidate;
+                    break;
+                }
+            }
+            if (hub == null) {
+                hub = untried.get(0);
+                waitForTurn(hub);
+            }
+            untried.remove(hub);
+
+            try {
+                return sessionFactory.apply(hub.url, capabilities);
+            } catch (RuntimeException e) {
+                if (isUnreachable(e)) {
+                    LOGGER.warn("Unable to reach {}, taking it out of rotation: {}", hub.url, e.getMessage());
+                    hub.markDown();
+                } else {
+                    LOGGER.warn("{} did not create a session: {}", hub.url, e.getMessage());
+                    if (!(e instanceof SessionNotCreatedException)) {
+                        // Not an answer from the grid itself, e.g. an HTTP error from a proxy, so check the hub again.
+                        hub.recheckStatus();
+                    }
+                }
+                lastException = e;
+            } finally {
+                hub.inFlight.release();
+            }
+        }
+        throw lastException;
+    }
+
+    /**
+     * Returns the number of free slots on all ready hubs, e.g. to size the number of test threads.
+     *
+     * @return
+     */
+    public int getFreeSlots() {
+        return rankHubs().stream().filter(hub -> hub.ready).mapToInt(hub -> Math.max(0, hub.getCapacity(null))).sum();
+    }
+
+    List<Hub> rankHubs() {
+        return rankHubs(null);
+    }
+
+    /**
+     * Orders the hubs from most to least free capacity for the browser.
+     * Hubs that are down or not ready go last, so they are only used when nothing else is available.
+     *
+     * @param browserName Only counts the slots of this browser, or all slots when null or empty.
+     * @return
+     */
+    List<Hub> rankHubs(String browserName) {
+        List<Hub> ranked = new ArrayList<>(hubs);
+        ranked.forEach(Hub::refreshStatus);
+        ranked.sort(Comparator.comparing((Hub hub) -> !hub.ready)
+                .thenComparing((Hub hub) -> hub.getCapacity(browserName), Comparator.reverseOrder()));
+        return ranked;
+    }
+
+    private static void waitForTurn(Hub hub) {
+        try {
+            if (!hub.inFlight.tryAcquire(SESSION_QUEUE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new WebDriverException("Timed out waiting to request a session from " + hub.url);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebDriverException("Interrupted while waiting to request a session from " + hub.url, e);
+        }
+    }
+
+    /**
+     * Whether a session request failed because the hub couldn't be reached, rather than because the hub answered
+     * with an error.
+     *
+     * @param e
+     * @return
+     */
+    static boolean isUnreachable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UnreachableBrowserException || cause instanceof IOException || cause instanceof UncheckedIOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class Hub {
+        private final URL url;
+        private final URL statusUrl;
+        private final int maxInFlight;
+        private final Semaphore inFlight;
+        private volatile boolean ready;
+        // The browser name of each free slot, empty when the slot doesn't name one.
+        private volatile List<String> freeSlots = Collections.emptyList();
+        private volatile long checkedAt;
+
+        Hub(String url, int maxInFlight) {
+            try {
+                this.url = new URL(url);
+                // Grid 4 serves the status at the root, and Grid 3 also at /wd/hub/status.
+                this.statusUrl = new URL(url.replaceAll("/+$", "").replaceAll("/wd/hub$", "") + "/status");
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Invalid remote hub URL: " + url, e);
+            }
+            this.maxInFlight = maxInFlight;
+            this.inFlight = new Semaphore(maxInFlight);
+        }
+
+        URL getUrl() {
+            return url;
+        }
+
+        /**
+         * Returns the number of free slots for the browser that are not already claimed by a session request in
+         * flight. Slots that don't name a browser count for every browser.
+         *
+         * @param browserName Only counts the slots of this browser, or all slots when null or empty.
+         * @return
+         */
+        int getCapacity(String browserName) {
+            boolean anyBrowser = browserName == null || browserName.isEmpty();
+            long free = freeSlots.stream().filter(slot -> anyBrowser || slot.isEmpty() || slot.equalsIgnoreCase(browserName)).count();
+            return (int) free - (maxInFlight - inFlight.availablePermits());
+        }
+
+        synchronized void refreshStatus() {
+            if (System.currentTimeMillis() - checkedAt < STATUS_MAX_AGE_MILLIS) {
+                return;
+            }
+            try {
+                HttpURLConnection connection = (HttpURLConnection) statusUrl.openConnection();
+                connection.setConnectTimeout(STATUS_TIMEOUT_MILLIS);
+                connection.setReadTimeout(STATUS_TIMEOUT_MILLIS);
+                try (InputStream input = connection.getInputStream()) {
+                    JsonNode value = MAPPER.readTree(input).path("value");
+                    ready = value.path("ready").asBoolean(false);
+                    freeSlots = getFreeSlotBrowsers(value);
+                } finally {
+                    connection.disconnect();
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Unable to get status of {}: {}", statusUrl, e.toString());
+                ready = false;
+                freeSlots = Collections.emptyList();
+            }
+            checkedAt = System.currentTimeMillis();
+        }
+
+        synchronized void recheckStatus() {
+            checkedAt = 0;
+            refreshStatus();
+        }
+
+        void markDown() {
+            ready = false;
+            checkedAt = System.currentTimeMillis();
+        }
+
+        private static List<String> getFreeSlotBrowsers(JsonNode value) {
+            List<String> free = new ArrayList<>();
+            for (JsonNode node : value.path("nodes")) {
+                if (!"UP".equals(node.path("availability").asText("UP"))) {
+                    continue;
+                }
+                for (JsonNode slot : node.path("slots")) {
+                    if (slot.path("session").isMissingNode() || slot.path("session").isNull()) {
+                        free.add(slot.path("stereotype").path("browserName").asText(""));
+                    }
+                }
+            }
+            return free;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package selenium;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.LatencyStats;
+import utils.TestParameters;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Sizes the number of test threads from the resources of the host, and holds back new local browser sessions
+ * while the host is saturated.
+ * Local browsers are limited by the processor count and by the available memory divided by the memory one browser
+ * uses. Available memory includes the page cache the kernel can reclaim, and is limited by the container's memory
+ * cgroup. The browser memory is measured by starting one session before the suite. Remote browsers are limited by
+ * the free slots of the grid hubs.
+ * New sessions wait while the CPU is busy. Memory only holds a session back while other sessions are still starting,
+ * because their memory doesn't show yet.
+ * Command line usage:
+ * -Dthreads=auto                Size the number of test threads, and hold back new sessions on a saturated host
+ * -DbrowserMemoryMB=500         Memory of one browser, instead of measuring it
+ * -DmaxCpuLoad=0.9              System CPU load above which new local sessions wait
+ */
+public class HostCapacity {
+    private static final Logger LOGGER = LoggerFactory.getLogger("HostCapacity");
+    private static final HostCapacity instance = new HostCapacity();
+    private static final long MB = 1024 * 1024;
+    // Memory left for the JVM, the driver processes and the rest of the host.
+    private static final long RESERVED_MEMORY = 1024 * MB;
+    // Measurements below this are noise, e.g. memory freed by something else while the browser started.
+    private static final long MIN_BROWSER_MEMORY = 150 * MB;
+    private static final long DEFAULT_BROWSER_MEMORY = 500 * MB;
+    private static final long ADMISSION_POLL_MILLIS = 500;
+    // Sessions start anyway after this, so a host that stays busy slows the run down but doesn't stop it.
+    private static final long MAX_ADMISSION_WAIT_MILLIS = 60_000;
+    // Cgroup v1 reports no limit as a number close to Long.MAX_VALUE.
+    private static final long UNLIMITED = 1L << 60;
+
+    private final boolean enabled;
+    private final double maxCpuLoad;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final LatencyStats admissionWaits = new LatencyStats();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong heldBack = new AtomicLong();
+    private final AtomicLong forced = new AtomicLong();
+    private final AtomicInteger starting = new AtomicInteger();
+    private volatile long browserMemory;
+    private volatile String plan = "";
+
+    private HostCapacity() {
+        enabled = TestParameters.getParameter("threads", "").equals("auto");
+        maxCpuLoad = Double.parseDouble(TestParameters.getParameter("maxCpuLoad", "0.9"));
+        String memory = TestParameters.getParameter("browserMemoryMB", "");
+        browserMemory = memory.equals("") ? 0 : Long.parseLong(memory) * MB;
+    }
+
+    public static HostCapacity getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Works out the number of test threads for a web driver type.
+     *
+     * @param driverName The web driver name, e.g. "chrome" or "remote_firefox".
+     * @param startUrl   The page the measured browser opens.
+     * @return At least 1.
+     */
+    public int getThreadCount(String driverName, String startUrl) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (driverName.startsWith("remote_")) {
+            int freeSlots = GridRouter.getInstance().getFreeSlots();
+            // The test threads only wait for the grid, but keep some limit when the grid reports a very large capacity.
+            int threads = Math.max(1, Math.min(freeSlots, processors * 4));
+            plan = String.format("Free grid slots: %d%nProcessors: %d%nThreads: %d", freeSlots, processors, threads);
+            return threads;
+        }
+
+        if (browserMemory == 0) {
+            browserMemory = measureBrowserMemory(driverName, startUrl);
+        }
+        long availableMemory = getAvailableMemory();
+        int memoryThreads = (int) Math.max(1, (availableMemory - RESERVED_MEMORY) / browserMemory);
+        int threads = Math.max(1, Math.min(processors, memoryThreads));
+        plan = String.format("Processors: %d%nAvailable memory: %d MB%nBrowser memory: %d MB%nThreads: %d",
+                processors, availableMemory / MB, browserMemory / MB, threads);
+        return threads;
+    }
+
+    /**
+     * Waits until the host has room for another local browser. Call {@link #started(String)} when the browser started.
+     * Does nothing when auto sizing is off, or for remote browsers, which the {@link GridRouter} queues.
+     *
+     * @param driverName The web driver name, e.g. "chrome" or "remote_firefox".
+     */
+    public void admit(String driverName) {
+        if (!enabled || driverName.startsWith("remote_")) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean waited = false;
+        while (isSaturated()) {
+            if (System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(MAX_ADMISSION_WAIT_MILLIS)) {
+                LOGGER.warn("Host still saturated after {} ms, starting browser anyway", MAX_ADMISSION_WAIT_MILLIS);
+                forced.incrementAndGet();
+                break;
+            }
+            waited = true;
+            try {
+                Thread.sleep(ADMISSION_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new WebDriverException("Interrupted while waiting for host capacity", e);
+            }
+        }
+        if (waited) {
+            heldBack.incrementAndGet();
+            admissionWaits.recordSince(start);
+        }
+        admitted.incrementAndGet();
+        starting.incrementAndGet();
+    }
+
+    /**
+     * Marks a browser admitted by {@link #admit(String)} as started, or failed to start.
+     *
+     * @param driverName
+     */
+    public void started(String driverName) {
+        if (!enabled || driverName.startsWith("remote_")) {
+            return;
+        }
+        starting.decrementAndGet();
+    }
+
+    public String getStatistics() {
+        return plan + "\n"
+                + "Sessions admitted: " + admitted.get() + "\n"
+                + "Sessions held back: " + heldBack.get() + " (" + admissionWaits + ")\n"
+                + "Started while saturated: " + forced.get();
+    }
+
+    private boolean isSaturated() {
+        if (getCpuLoad() > maxCpuLoad) {
+            return true;
+        }
+        // The memory estimate is a heuristic, so it never holds a session back when no other session is starting.
+        int pending = starting.get();
+        if (pending == 0) {
+            return false;
+        }
+        long memory = browserMemory == 0 ? DEFAULT_BROWSER_MEMORY : browserMemory;
+        return getAvailableMemory() - pending * memory < memory + RESERVED_MEMORY / 2;
+    }
+
+    /**
+     * Starts one session, and takes the memory of the processes it started as the memory of one browser.
+     * Where process memory can't be read, the drop in available memory is used.
+     */
+    private long measureBrowserMemory(String driverName, String startUrl) {
+        Set<Long> processesBefore = getDescendants();
+        long availableBefore = getAvailableMemory();
+        RemoteWebDriver driver = null;
+        try {
+            driver = WebDriverFactory.startSession(driverName);
+            driver.get(startUrl);
+            long measured = getProcessMemory(processesBefore);
+            if (measured < 0) {
+                measured = availableBefore - getAvailableMemory();
+            }
+            LOGGER.info("Measured browser memory: {} MB", measured / MB);
+            return Math.max(MIN_BROWSER_MEMORY, measured);
+        } catch (WebDriverException e) {
+            LOGGER.warn("Unable to measure browser memory, using {} MB: {}", DEFAULT_BROWSER_MEMORY / MB, e.toString());
+            return DEFAULT_BROWSER_MEMORY;
+        } finally {
+            if (driver != null) {
+                WebDriverFactory.quit(driver);
+            }
+        }
+    }
+
+    /**
+     * Returns the memory that new processes can use without swapping.
+     * On Linux that is MemAvailable, limited by the memory cgroup. Free memory alone doesn't count the page cache,
+     * so a host with a warm cache would look full.
+     */
+    @SuppressWarnings("deprecation")
+    private long getAvailableMemory() {
+        long available = readValue(Paths.get("/proc/meminfo"), "MemAvailable") * 1024;
+        if (available < 0) {
+            if (!(os instanceof com.sun.management.OperatingSystemMXBean)) {
+                return Long.MAX_VALUE;
+            }
+            // Renamed to getFreeMemorySize in Java 14, the old name still works.
+            available = ((com.sun.management.OperatingSystemMXBean) os).getFreePhysicalMemorySize();
+        }
+        long cgroupAvailable = getCgroupAvailableMemory();
+        return cgroupAvailable < 0 ? available : Math.min(available, cgroupAvailable);
+    }
+
+    /**
+     * Returns the limit of the memory cgroup minus the memory in use, not counting inactive page cache.
+     *
+     * @return -1 without a cgroup limit.
+     */
+    private static long getCgroupAvailableMemory() {
+        Path v2 = Paths.get("/sys/fs/cgroup");
+        Path v1 = Paths.get("/sys/fs/cgroup/memory");
+        long limit;
+        long usage;
+        long inactiveFile;
+        if (Files.exists(v2.resolve("memory.max"))) {
+            limit = readNumber(v2.resolve("memory.max"));
+            usage = readNumber(v2.resolve("memory.current"));
+            inactiveFile = readValue(v2.resolve("memory.stat"), "inactive_file");
+        } else {
+            limit = readNumber(v1.resolve("memory.limit_in_bytes"));
+            usage = readNumber(v1.resolve("memory.usage_in_bytes"));
+            inactiveFile = readValue(v1.resolve("memory.stat"), "total_inactive_file");
+        }
+        if (limit < 0 || limit >= UNLIMITED || usage < 0) {
+            return -1;
+        }
+        return Math.max(0, limit - (usage - Math.max(0, inactiveFile)));
+    }
+
+    /**
+     * Returns the proportional memory (PSS) of the processes this JVM started since the given processes, so memory
+     * shared between the processes of a browser is counted once.
+     *
+     * @return -1 when the process memory can't be read, e.g. not on Linux.
+     */
+    private static long getProcessMemory(Set<Long> excluded) {
+        long total = 0;
+        for (long pid : getDescendants()) {
+            if (excluded.contains(pid)) {
+                continue;
+            }
+            long pss = readValue(Paths.get("/proc", String.valueOf(pid), "smaps_rollup"), "Pss");
+            if (pss < 0) {
+                return -1;
+            }
+            total += pss * 1024;
+        }
+        return total;
+    }
+
+    private static Set<Long> getDescendants() {
+        return ProcessHandle.current().descendants().map(ProcessHandle::pid).collect(Collectors.toSet());
+    }
+
+    /**
+     * Reads a value from a file with a name and a number per line, e.g. "MemAvailable:  123 kB".
+     *
+     * @return -1 when the file or value doesn't exist.
+     */
+    private static long readValue(Path file, String name) {
+        try {
+            List<String> lines = Files.readAllLines(file);
+            for (String line : lines) {
+                String[] parts = line.split("[:\\s]+");
+                if (parts.length > 1 && parts[0].equals(name)) {
+                    return Long.parseLong(parts[1]);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.debug("Unable to read {} from {}: {}", name, file, e.toString());
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a file with a single number, e.g. a cgroup limit.
+     *
+     * @return -1 when the file doesn't exist or has no limit, e.g. "max".
+     */
+    private static long readNumber(Path file) {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(file)).trim());
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private double getCpuLoad() {
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            // Negative when not available yet.
+            return ((com.sun.management.OperatingSystemMXBean) os).getSystemCpuLoad();
+        }
+        return os.getSystemLoadAverage() / os.getAvailableProcessors();
+    }
+}
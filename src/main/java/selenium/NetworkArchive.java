@@ -0,0 +1,278 @@
+package selenium;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.devtools.HasDevTools;
+import org.openqa.selenium.devtools.NetworkInterceptor;
+import org.openqa.selenium.remote.Augmenter;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.http.Contents;
+import org.openqa.selenium.remote.http.HttpHandler;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.TestParameters;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the responses the application serves, and replays them without network access.
+ * Uses DevTools request interception, so it only works with Chromium based browsers.
+ * Command line usage:
+ * (no value)                         Normal network access
+ * -Dnetwork=record                   Fetch every request and store the response in the archive
+ * -Dnetwork=replay                   Serve stored responses, requests not in the archive go to the network
+ * -Dnetwork=replay -DnetworkStrict   Serve stored responses, requests not in the archive get a 404
+ * -DnetworkArchive=network.gz        Location of the archive, by default network-archive.gz, which git ignores
+ */
+public class NetworkArchive {
+    private static final Logger LOGGER = LoggerFactory.getLogger("NetworkArchive");
+    private static final int FORMAT_VERSION = 1;
+    // The Java HTTP client does not allow setting these, and the response must not be compressed.
+    private static final Set<String> SKIPPED_REQUEST_HEADERS = new HashSet<>(Arrays.asList(
+            "host", "connection", "content-length", "date", "expect", "from", "upgrade", "via", "warning", "accept-encoding"));
+    private static final NetworkArchive instance = new NetworkArchive();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong missed = new AtomicLong();
+    private final String mode;
+    private final boolean strict;
+    private final Path file;
+    private HttpClient client;
+
+    private NetworkArchive() {
+        mode = TestParameters.getParameter("network", "");
+        strict = System.getProperty("networkStrict") != null;
+        file = Paths.get(TestParameters.getParameter("networkArchive", "network-archive.gz"));
+        if (!mode.equals("") && !mode.equals("record") && !mode.equals("replay")) {
+            throw new IllegalArgumentException("Unsupported network mode: " + mode);
+        }
+        if (!mode.equals("")) {
+            load();
+        }
+        if (mode.equals("record")) {
+            client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).connectTimeout(Duration.ofSeconds(30)).build();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::save, "NetworkArchive save"));
+        }
+    }
+
+    public static NetworkArchive getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts recording or replaying network traffic in a new session, depending on the network mode.
+     *
+     * @param driver
+     */
+    public void setupNetwork(RemoteWebDriver driver) {
+        if (mode.equals("")) {
+            return;
+        }
+        WebDriver devToolsDriver = driver instanceof HasDevTools ? driver : new Augmenter().augment(driver);
+        if (!(devToolsDriver instanceof HasDevTools)) {
+            LOGGER.warn("Network {} is not supported by {}", mode, driver.getCapabilities().getBrowserName());
+            return;
+        }
+        // The interceptor stays active until the session is closed.
+        HttpHandler handler = mode.equals("record") ? this::record : this::replay;
+        new NetworkInterceptor(devToolsDriver, handler);
+    }
+
+    public boolean isEnabled() {
+        return !mode.equals("");
+    }
+
+    /**
+     * Writes the recorded responses to the archive.
+     */
+    public synchronized void save() {
+        if (!mode.equals("record") || recorded.get() == 0) {
+            return;
+        }
+        try {
+            if (file.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+            }
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))) {
+                output.writeInt(FORMAT_VERSION);
+                output.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    entry.getValue().write(output);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to save network archive " + file, e);
+        }
+    }
+
+    public String getStatistics() {
+        return "Mode: " + mode + "\n"
+                + "Archive: " + file + " (" + entries.size() + " responses)\n"
+                + "Recorded: " + recorded.get() + "\n"
+                + "Replayed: " + replayed.get() + "\n"
+                + "Not in archive: " + missed.get();
+    }
+
+    private HttpResponse record(HttpRequest request) {
+        byte[] body = Contents.bytes(request.getContent());
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(URI.create(request.getUri()))
+                .method(request.getMethod().toString(), body.length == 0
+                        ? java.net.http.HttpRequest.BodyPublishers.noBody()
+                        : java.net.http.HttpRequest.BodyPublishers.ofByteArray(body));
+        for (String name : request.getHeaderNames()) {
+            if (!SKIPPED_REQUEST_HEADERS.contains(name.toLowerCase())) {
+                request.getHeaders(name).forEach(value -> builder.header(name, value));
+            }
+        }
+
+        java.net.http.HttpResponse<byte[]> response;
+        try {
+            response = client.send(builder.build(), java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to record " + request.getUri(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while recording " + request.getUri(), e);
+        }
+
+        List<String[]> headers = new ArrayList<>();
+        response.headers().map().forEach((name, values) -> {
+            // HTTP/2 pseudo headers can't be replayed.
+            if (!name.startsWith(":")) {
+                values.forEach(value -> headers.add(new String[]{name, value}));
+            }
+        });
+        Entry entry = new Entry(response.statusCode(), headers, response.body());
+        entries.put(getKey(request.getMethod(), request.getUri(), body), entry);
+        recorded.incrementAndGet();
+        return entry.toResponse();
+    }
+
+    private HttpResponse replay(HttpRequest request) {
+        Entry entry = entries.get(getKey(request.getMethod(), request.getUri(), Contents.bytes(request.getContent())));
+        if (entry != null) {
+            replayed.incrementAndGet();
+            return entry.toResponse();
+        }
+        missed.incrementAndGet();
+        if (strict) {
+            return new HttpResponse().setStatus(404).setContent(Contents.utf8String("Not in network archive: " + request.getUri()));
+        }
+        return NetworkInterceptor.PROCEED_WITH_REQUEST;
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            if (mode.equals("replay")) {
+                LOGGER.warn("Network archive {} not found, nothing will be replayed", file);
+            }
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file))))) {
+            int version = input.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalStateException("Unsupported network archive version " + version + " in " + file);
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                entries.put(input.readUTF(), Entry.read(input));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load network archive " + file, e);
+        }
+    }
+
+    /**
+     * Requests are identified by method and URL, and the body hash for requests with a body.
+     */
+    private static String getKey(HttpMethod method, String uri, byte[] body) {
+        int fragment = uri.indexOf('#');
+        String key = method + " " + (fragment >= 0 ? uri.substring(0, fragment) : uri);
+        if (body.length == 0) {
+            return key;
+        }
+        try {
+            return key + " " + Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        private final int status;
+        private final List<String[]> headers;
+        private final byte[] body;
+
+        private Entry(int status, List<String[]> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        private static Entry read(DataInputStream input) throws IOException {
+            int status = input.readInt();
+            int headerCount = input.readInt();
+            List<String[]> headers = new ArrayList<>(headerCount);
+            for (int i = 0; i < headerCount; i++) {
+                headers.add(new String[]{input.readUTF(), input.readUTF()});
+            }
+            byte[] body = new byte[input.readInt()];
+            input.readFully(body);
+            return new Entry(status, headers, body);
+        }
+
+        private void write(DataOutputStream output) throws IOException {
+            output.writeInt(status);
+            output.writeInt(headers.size());
+            for (String[] header : headers) {
+                output.writeUTF(header[0]);
+                output.writeUTF(header[1]);
+            }
+            output.writeInt(body.length);
+            output.write(body);
+        }
+
+        private HttpResponse toResponse() {
+            HttpResponse response = new HttpResponse().setStatus(status);
+            for (String[] header : headers) {
+                // The body is stored decoded, so the length and encoding of the original response don't apply.
+                if (!header[0].equalsIgnoreCase("content-length") && !header[0].equalsIgnoreCase("content-encoding")) {
+                    response.addHeader(header[0], header[1]);
+                }
+            }
+            return response.setContent(Contents.bytes(body));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package selenium;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.UnhandledAlertException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chromium.HasCdp;
+import org.openqa.selenium.remote.Augmenter;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.LatencyStats;
+import utils.TestParameters;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Waits until a page is idle: no fetch or XHR requests in flight, no finite animations running, and no elements
+ * added or removed for a quiet window. An instrumentation script tracks the activity in the page, and the wait is
+ * one asynchronous script that completes as soon as the page is idle.
+ * Attribute and text changes are not activity, because carousels, spinners and clocks change them all the time.
+ * Pages that keep adding and removing elements only hold the wait for a limited time; after that only requests,
+ * animations and loading count.
+ * Chromium browsers get the instrumentation before any page script runs. Other browsers get it on the first wait
+ * in a document, so requests started before that are not seen.
+ * Command line usage:
+ * -DpageQuietMillis=200          How long the page must be idle before it is ready
+ * -DpageDomSettleMillis=2000     How long DOM changes can hold a wait
+ */
+public class PageActivityMonitor {
+    private static final Logger LOGGER = LoggerFactory.getLogger("PageActivityMonitor");
+    public static final long QUIET_MILLIS = Long.parseLong(TestParameters.getParameter("pageQuietMillis", "200"));
+    private static final long DOM_SETTLE_MILLIS = Long.parseLong(TestParameters.getParameter("pageDomSettleMillis", "2000"));
+    // Below the default script timeout of 30 seconds, longer waits are split into several calls.
+    private static final long MAX_SCRIPT_MILLIS = 25000;
+    // Consecutive script errors accepted while the page navigates.
+    private static final int MAX_FAILURES = 3;
+    private static final LatencyStats waits = new LatencyStats();
+
+    private static final String INSTRUMENTATION_SCRIPT = ""
+            + "(function () {"
+            + "  if (window.__pageActivity) {"
+            + "    return;"
+            + "  }"
+            + "  var activity = window.__pageActivity = {requests: 0, last: Date.now(), dom: 0, listeners: [], animations: new WeakSet()};"
+            + "  activity.notify = function () {"
+            + "    activity.listeners.slice().forEach(function (listener) { listener(); });"
+            + "  };"
+            + "  activity.changed = function () {"
+            + "    activity.last = Date.now();"
+            + "    activity.notify();"
+            + "  };"
+            + "  var send = XMLHttpRequest.prototype.send;"
+            + "  XMLHttpRequest.prototype.send = function () {"
+            + "    activity.requests++;"
+            + "    activity.changed();"
+            + "    this.addEventListener('loadend', function () { activity.requests--; activity.changed(); });"
+            + "    try {"
+            + "      return send.apply(this, arguments);"
+            + "    } catch (e) {"
+            + "      activity.requests--;"
+            + "      throw e;"
+            + "    }"
+            + "  };"
+            + "  if (window.fetch) {"
+            + "    var fetch = window.fetch;"
+            + "    window.fetch = function () {"
+            + "      activity.requests++;"
+            + "      activity.changed();"
+            + "      var done = function () { activity.requests--; activity.changed(); };"
+            + "      try {"
+            + "        var result = fetch.apply(this, arguments);"
+            + "      } catch (e) {"
+            + "        done();"
+            + "        throw e;"
+            + "      }"
+            + "      result.then(done, done);"
+            + "      return result;"
+            + "    };"
+            + "  }"
+            + "  new MutationObserver(function () {"
+            + "    activity.dom = Date.now();"
+            + "    activity.notify();"
+            + "  }).observe(document, {subtree: true, childList: true});"
+            + "  ['readystatechange', 'animationend', 'animationcancel', 'transitionend', 'transitioncancel'].forEach(function (type) {"
+            + "    document.addEventListener(type, activity.changed, true);"
+            + "  });"
+            + "})();";
+
+    private static final String WAIT_SCRIPT = INSTRUMENTATION_SCRIPT
+            + "var quiet = arguments[0], timeout = arguments[1], domSettle = arguments[2], callback = arguments[arguments.length - 1];"
+            + "var activity = window.__pageActivity, start = Date.now(), timer = null, deadline = null, settled = null, done = false;"
+            + "function getAnimations() {"
+            + "  if (!document.getAnimations) {"
+            + "    return [];"
+            + "  }"
+            // Infinite animations, e.g. decorations, never finish and are ignored.
+            + "  return document.getAnimations().filter(function (animation) {"
+            + "    return animation.playState === 'running' && animation.effect"
+            + "      && isFinite(animation.effect.getComputedTiming().endTime);"
+            + "  });"
+            + "}"
+            // The deadline and a check can both finish the wait, e.g. in the same tick, but only the first one counts.
+            + "function finish(result) {"
+            + "  if (done) {"
+            + "    return;"
+            + "  }"
+            + "  done = true;"
+            + "  clearTimeout(timer);"
+            + "  clearTimeout(deadline);"
+            + "  clearTimeout(settled);"
+            + "  var index = activity.listeners.indexOf(check);"
+            + "  if (index >= 0) {"
+            + "    activity.listeners.splice(index, 1);"
+            + "  }"
+            + "  callback(result);"
+            + "}"
+            + "function check() {"
+            + "  if (done) {"
+            + "    return;"
+            + "  }"
+            + "  clearTimeout(timer);"
+            + "  var animations = getAnimations();"
+            + "  animations.forEach(function (animation) {"
+            + "    if (!activity.animations.has(animation)) {"
+            + "      activity.animations.add(animation);"
+            + "      animation.finished.then(activity.changed, activity.changed);"
+            + "    }"
+            + "  });"
+            + "  if (activity.requests > 0 || animations.length > 0 || document.readyState === 'loading') {"
+            + "    return;"
+            + "  }"
+            // The quiet window starts at the wait, so activity caused by the last command is not missed.
+            + "  var last = Math.max(activity.last, start);"
+            + "  if (Date.now() - start < domSettle) {"
+            + "    last = Math.max(last, activity.dom);"
+            + "  }"
+            + "  var idle = Date.now() - last;"
+            + "  if (idle >= quiet) {"
+            + "    finish(null);"
+            + "  } else {"
+            + "    timer = setTimeout(check, quiet - idle);"
+            + "  }"
+            + "}"
+            + "activity.listeners.push(check);"
+            + "settled = setTimeout(check, domSettle);"
+            + "deadline = setTimeout(function () {"
+            + "  finish({requests: activity.requests, animations: getAnimations().length, readyState: document.readyState,"
+            + "    idleMillis: Date.now() - Math.max(activity.last, start)});"
+            + "}, timeout);"
+            + "check();";
+
+    /**
+     * Adds the instrumentation to every document the session opens, when the browser supports it.
+     *
+     * @param driver
+     */
+    public static void install(RemoteWebDriver driver) {
+        try {
+            // Only remote sessions need to be augmented, local drivers implement the interfaces they support.
+            WebDriver cdpDriver = driver.getClass() == RemoteWebDriver.class ? new Augmenter().augment(driver) : driver;
+            if (cdpDriver instanceof HasCdp) {
+                ((HasCdp) cdpDriver).executeCdpCommand("Page.addScriptToEvaluateOnNewDocument",
+                        Collections.singletonMap("source", INSTRUMENTATION_SCRIPT));
+            }
+        } catch (WebDriverException e) {
+            LOGGER.debug("Page activity instrumentation not installed: {}", e.toString());
+        }
+    }
+
+    /**
+     * Waits until the page is idle.
+     *
+     * @param driver
+     * @param quiet   How long the page must be idle.
+     * @param timeout
+     * @throws TimeoutException When the page is still busy after the timeout. The message describes the activity.
+     */
+    public static void waitUntilQuiet(WebDriver driver, Duration quiet, Duration timeout) {
+        long start = System.nanoTime();
+        long end = start + timeout.toNanos();
+        Object pending = null;
+        int failures = 0;
+        try {
+            while (System.nanoTime() < end) {
+                long chunkMillis = Math.max(1, Math.min(MAX_SCRIPT_MILLIS, (end - System.nanoTime()) / 1_000_000));
+                try {
+                    pending = ((JavascriptExecutor) driver).executeAsyncScript(WAIT_SCRIPT, quiet.toMillis(), chunkMillis, DOM_SETTLE_MILLIS);
+                } catch (UnhandledAlertException | NoSuchWindowException e) {
+                    throw e;
+                } catch (WebDriverException e) {
+                    // The document was unloaded during the wait, e.g. by a form submit. Wait in the new document.
+                    if (++failures > MAX_FAILURES) {
+                        throw e;
+                    }
+                    pending = e.getMessage();
+                    continue;
+                }
+                failures = 0;
+                if (pending == null) {
+                    return;
+                }
+            }
+            throw new TimeoutException("Page not ready after " + timeout.getSeconds() + " seconds: " + describe(pending));
+        } finally {
+            waits.recordSince(start);
+        }
+    }
+
+    public static String getStatistics() {
+        return "Waits: " + waits;
+    }
+
+    private static String describe(Object pending) {
+        if (pending instanceof Map) {
+            Map<?, ?> state = (Map<?, ?>) pending;
+            return state.get("requests") + " requests in flight, " + state.get("animations") + " animations running, "
+                    + "ready state " + state.get("readyState") + ", last change " + state.get("idleMillis") + " ms ago";
+        }
+        return String.valueOf(pending);
+    }
+}
@@ -0,0 +1,71 @@
+package selenium;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import utils.LatencyStats;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects Navigation Timing results per browser profile, to compare the page load cost of browser settings.
+ */
+public class PageLoadTimings {
+    private static final Map<String, LatencyStats> timings = new ConcurrentHashMap<>();
+    private static final String NAVIGATION_TIMING_SCRIPT =
+            "var t = performance.getEntriesByType('navigation')[0];"
+                    + "return t ? [t.responseEnd, t.domContentLoadedEventEnd, t.loadEventEnd] : null;";
+
+    /**
+     * Records the timing of the first navigation in a session.
+     *
+     * @param driver
+     * @param warm   Whether the session was used before, e.g. when it comes from the pool.
+     */
+    public static void record(RemoteWebDriver driver, boolean warm) {
+        String label = BrowserProfile.current().getName()
+                + (ProfileTemplate.getInstance().isEnabled() ? " template" : "")
+                + (warm ? " warm" : " cold");
+        record(driver, label);
+    }
+
+    /**
+     * Records the timing of the last navigation in a session.
+     *
+     * @param driver
+     * @param label  The group to record the timing in.
+     */
+    public static void record(RemoteWebDriver driver, String label) {
+        List<?> values;
+        try {
+            values = (List<?>) driver.executeScript(NAVIGATION_TIMING_SCRIPT);
+        } catch (WebDriverException e) {
+            return;
+        }
+        if (values == null) {
+            return;
+        }
+
+        record(label + " response", values.get(0));
+        record(label + " DOM content loaded", values.get(1));
+        // With the eager page load strategy the load event may not have happened yet.
+        record(label + " load", values.get(2));
+    }
+
+    public static String getStatistics() {
+        StringBuilder builder = new StringBuilder();
+        new TreeMap<>(timings).forEach((name, stats) -> builder.append(name).append(": ").append(stats).append("\n"));
+        return builder.toString();
+    }
+
+    private static void record(String name, Object millis) {
+        double value = ((Number) millis).doubleValue();
+        if (value > 0) {
+            timings.computeIfAbsent(name, key -> new LatencyStats())
+                    .record(TimeUnit.MICROSECONDS.toNanos((long) (value * 1000)));
+        }
+    }
+}
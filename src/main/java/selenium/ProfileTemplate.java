@@ -0,0 +1,326 @@
+package selenium;
+
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.chromium.ChromiumOptions;
+import org.openqa.selenium.edge.EdgeDriver;
+import org.openqa.selenium.edge.EdgeOptions;
+import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.firefox.FirefoxOptions;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.TestParameters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Starts local browsers from a copy of a warmed template profile instead of an empty one.
+ * The template is built once per run by visiting the start page, so the disk cache is populated and first run
+ * initialisation is done. Each session gets its own clone, which is deleted when the session quits through
+ * {@link WebDriverFactory#quit(RemoteWebDriver)}. Clones that are left are deleted at the end of the run.
+ * Command line usage:
+ * -DprofileTemplate                                   Use a warmed template profile for local Chrome, Edge and Firefox
+ * -DprofileTemplateUrls=inventory.html,cart.html      Additional pages to visit while warming, relative to the start page
+ * -DprofileClone=reflink                              Clone profiles copy on write (Linux on btrfs, xfs and similar),
+ *                                                     falls back to copying when the file system doesn't support it
+ */
+public class ProfileTemplate {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ProfileTemplate");
+    private static final ProfileTemplate instance = new ProfileTemplate();
+    private static final Path PROFILES_DIRECTORY = Paths.get("target", "browser-profiles");
+
+    private final boolean enabled;
+    private volatile boolean reflink;
+    private final Map<String, Path> templates = new ConcurrentHashMap<>();
+    private final List<Path> clones = new ArrayList<>();
+    // The clone of the session that the current thread is starting, until the session exists.
+    private final ThreadLocal<Path> startingClone = new ThreadLocal<>();
+    private final Map<RemoteWebDriver, Path> sessionClones = new ConcurrentHashMap<>();
+
+    private ProfileTemplate() {
+        enabled = System.getProperty("profileTemplate") != null;
+        reflink = TestParameters.getParameter("profileClone", "copy").equals("reflink");
+        if (enabled) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::cleanup, "ProfileTemplate cleanup"));
+        }
+    }
+
+    public static ProfileTemplate getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Builds the template profile for a browser by visiting the start page in a headless session.
+     *
+     * @param driverName The web driver name. Remote drivers are skipped, because their profiles live on the grid.
+     * @param startUrl   The page to warm the cache with.
+     */
+    public synchronized void prepare(String driverName, String startUrl) {
+        String browser = getBrowser(driverName);
+        if (!enabled || browser == null || templates.containsKey(browser)) {
+            return;
+        }
+
+        Path template = PROFILES_DIRECTORY.resolve(browser + "-template").toAbsolutePath();
+        delete(template);
+        List<String> urls = new ArrayList<>();
+        urls.add(startUrl);
+        String extraUrls = TestParameters.getParameter("profileTemplateUrls", "");
+        if (!extraUrls.equals("")) {
+            for (String path : extraUrls.split(",")) {
+                urls.add(startUrl.replaceAll("/+$", "") + "/" + path.trim().replaceAll("^/+", ""));
+            }
+        }
+
+        RemoteWebDriver driver = startTemplateSession(browser, template);
+        try {
+            urls.forEach(driver::get);
+        } finally {
+            driver.quit();
+        }
+        templates.put(browser, template);
+    }
+
+    /**
+     * Points the options at a fresh clone of the Chrome or Edge template.
+     *
+     * @param options
+     * @param browser "chrome" or "edge".
+     */
+    public void apply(ChromiumOptions<?> options, String browser) {
+        Path template = templates.get(browser);
+        if (template != null) {
+            options.addArguments("--user-data-dir=" + createClone(template));
+            addFirstRunArguments(options);
+        }
+    }
+
+    public void apply(FirefoxOptions options) {
+        Path template = templates.get("firefox");
+        if (template != null) {
+            options.addArguments("-profile", createClone(template).toString());
+            addFirstRunPreferences(options);
+        }
+    }
+
+    /**
+     * Links the clone created for the session that the current thread started to that session.
+     *
+     * @param driver The session that started, or null if it failed to start, which deletes the clone.
+     */
+    void attach(RemoteWebDriver driver) {
+        Path clone = startingClone.get();
+        startingClone.remove();
+        if (clone == null) {
+            return;
+        }
+        if (driver == null) {
+            forget(clone);
+        } else {
+            sessionClones.put(driver, clone);
+        }
+    }
+
+    /**
+     * Deletes the clone of a session after the session quit.
+     *
+     * @param driver
+     */
+    void release(RemoteWebDriver driver) {
+        Path clone = sessionClones.remove(driver);
+        if (clone != null) {
+            forget(clone);
+        }
+    }
+
+    /**
+     * Deletes the clones that are left, e.g. of sessions kept open with -Dkeep. Templates are kept until the next run
+     * prepares them again.
+     */
+    public void cleanup() {
+        List<Path> deleted;
+        synchronized (clones) {
+            deleted = new ArrayList<>(clones);
+            clones.clear();
+        }
+        sessionClones.clear();
+        deleted.forEach(ProfileTemplate::delete);
+    }
+
+    private void forget(Path clone) {
+        synchronized (clones) {
+            clones.remove(clone);
+        }
+        delete(clone);
+    }
+
+    private RemoteWebDriver startTemplateSession(String browser, Path template) {
+        DriverBinaryResolver.resolve(browser);
+        switch (browser) {
+            case "chrome": {
+                ChromeOptions options = new ChromeOptions();
+                BrowserProfile.current().apply(options);
+                options.addArguments("--headless=new", "--user-data-dir=" + template);
+                addFirstRunArguments(options);
+                return new ChromeDriver(options);
+            }
+            case "edge": {
+                EdgeOptions options = new EdgeOptions();
+                BrowserProfile.current().apply(options);
+                options.addArguments("--headless=new", "--user-data-dir=" + template);
+                addFirstRunArguments(options);
+                return new EdgeDriver(options);
+            }
+            default: {
+                createDirectories(template);
+                FirefoxOptions options = new FirefoxOptions();
+                BrowserProfile.current().apply(options);
+                options.addArguments("-headless", "-profile", template.toString());
+                addFirstRunPreferences(options);
+                return new FirefoxDriver(options);
+            }
+        }
+    }
+
+    private Path createClone(Path template) {
+        Path clone = PROFILES_DIRECTORY.resolve(template.getFileName().toString().replace("-template", "-" + UUID.randomUUID())).toAbsolutePath();
+        synchronized (clones) {
+            clones.add(clone);
+        }
+        startingClone.set(clone);
+        if (reflink && reflink(template, clone)) {
+            return clone;
+        }
+
+        try (Stream<Path> paths = Files.walk(template)) {
+            for (Path source : (Iterable<Path>) paths::iterator) {
+                Path target = clone.resolve(template.relativize(source).toString());
+                String name = source.getFileName().toString();
+                if (Files.isDirectory(source)) {
+                    Files.createDirectories(target);
+                } else if (Files.isSymbolicLink(source) || isLockFile(name)) {
+                    // Lock files belong to the browser that built the template.
+                    continue;
+                } else {
+                    Files.copy(source, target);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to clone browser profile " + template, e);
+        }
+        return clone;
+    }
+
+    /**
+     * Clones the template with copy on write, so the clone shares the file data with the template until a browser
+     * changes it. Files can't simply be hard linked, because browsers update cache files in place.
+     *
+     * @return False when the file system or cp doesn't support it. Later clones are copied instead.
+     */
+    private boolean reflink(Path template, Path clone) {
+        try {
+            Files.createDirectories(clone);
+            Process process = new ProcessBuilder("cp", "-R", "--reflink=always", template + "/.", clone.toString())
+                    .redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (process.waitFor() == 0) {
+                deleteLockFiles(clone);
+                return true;
+            }
+            LOGGER.info("Copy on write is not available, copying browser profiles instead: {}", output);
+        } catch (IOException e) {
+            LOGGER.info("Copy on write is not available, copying browser profiles instead: {}", e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reflink = false;
+        delete(clone);
+        return false;
+    }
+
+    private static void deleteLockFiles(Path profile) throws IOException {
+        List<Path> lockFiles;
+        try (Stream<Path> paths = Files.walk(profile)) {
+            lockFiles = paths.filter(path -> Files.isSymbolicLink(path) || isLockFile(path.getFileName().toString()))
+                    .collect(Collectors.toList());
+        }
+        for (Path lockFile : lockFiles) {
+            Files.deleteIfExists(lockFile);
+        }
+    }
+
+    private static void addFirstRunArguments(ChromiumOptions<?> options) {
+        options.addArguments("--no-first-run", "--no-default-browser-check", "--disable-sync");
+    }
+
+    private static void addFirstRunPreferences(FirefoxOptions options) {
+        options.addPreference("browser.shell.checkDefaultBrowser", false);
+        options.addPreference("browser.startup.homepage_override.mstone", "ignore");
+        options.addPreference("datareporting.policy.dataSubmissionEnabled", false);
+        options.addPreference("toolkit.telemetry.reportingpolicy.firstRun", false);
+    }
+
+    private static boolean isLockFile(String name) {
+        return name.startsWith("Singleton") || name.equals("lockfile") || name.equals("parent.lock")
+                || name.equals(".parentlock") || name.equals("lock");
+    }
+
+    private static String getBrowser(String driverName) {
+        switch (driverName) {
+            case "chrome":
+            case "headless_chrome":
+                return "chrome";
+            case "edge":
+            case "headless_edge":
+                return "edge";
+            case "firefox":
+            case "headless_firefox":
+                return "firefox";
+            default:
+                return null;
+        }
+    }
+
+    private static void createDirectories(Path directory) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void delete(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    LOGGER.debug("Unable to delete {}: {}", path, e.toString());
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.debug("Unable to delete {}: {}", directory, e.toString());
+        }
+    }
+}
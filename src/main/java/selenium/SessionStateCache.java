@@ -0,0 +1,217 @@
+package selenium;
+
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.TestParameters;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs in through the UI once per user and environment, and gives later sessions the same cookies and storage
+ * instead of logging in again. The state is only reused for the same password, so a login with a wrong password
+ * still goes through the UI and fails there.
+ * The state expires with its first cookie, or after the maximum age. When the application doesn't accept the state
+ * any more, it is dropped and the user logs in through the UI again.
+ * Command line usage:
+ * -DsessionCache=off               Always log in through the UI
+ * -DsessionCacheMinutes=30         Maximum age of a cached login
+ */
+public class SessionStateCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger("SessionStateCache");
+    private static final SessionStateCache instance = new SessionStateCache();
+    private static final String CAPTURE_STORAGE_SCRIPT = ""
+            + "function copy(storage) {"
+            + "  var values = {};"
+            + "  for (var i = 0; i < storage.length; i++) { values[storage.key(i)] = storage.getItem(storage.key(i)); }"
+            + "  return values;"
+            + "}"
+            + "return [copy(window.localStorage), copy(window.sessionStorage)];";
+    private static final String RESTORE_STORAGE_SCRIPT = ""
+            + "var local = arguments[0], session = arguments[1];"
+            + "Object.keys(local).forEach(function (key) { window.localStorage.setItem(key, local[key]); });"
+            + "Object.keys(session).forEach(function (key) { window.sessionStorage.setItem(key, session[key]); });";
+
+    private final boolean enabled;
+    private final long maxAgeMillis;
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    private final AtomicLong restored = new AtomicLong();
+    private final AtomicLong uiLogins = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private SessionStateCache() {
+        enabled = !TestParameters.getParameter("sessionCache", "on").equals("off");
+        maxAgeMillis = TimeUnit.MINUTES.toMillis(Long.parseLong(TestParameters.getParameter("sessionCacheMinutes", "30")));
+    }
+
+    public static SessionStateCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Logs a user in, from the cached state when possible.
+     * The driver must be on a page of the application, e.g. the login page, so the cookies can be set.
+     *
+     * @param driver
+     * @param user     The user name, which together with the password and the current origin identifies the state.
+     * @param password
+     * @param uiLogin  Logs in through the UI when there is no usable state.
+     */
+    public void login(WebDriver driver, String user, String password, Runnable uiLogin) {
+        if (!enabled) {
+            uiLogin.run();
+            return;
+        }
+        // Only a hash of the password is kept, so it doesn't show up in the keys.
+        String key = user + "@" + getOrigin(driver.getCurrentUrl()) + "#" + hash(user + "\n" + password);
+        if (restore(driver, key)) {
+            return;
+        }
+
+        // One UI login per user at a time, so parallel tests wait for the state instead of all logging in.
+        synchronized (locks.computeIfAbsent(key, name -> new Object())) {
+            if (restore(driver, key)) {
+                return;
+            }
+            String startUrl = driver.getCurrentUrl();
+            uiLogin.run();
+            uiLogins.incrementAndGet();
+            String landingUrl = driver.getCurrentUrl();
+            if (landingUrl.equals(startUrl)) {
+                // The login failed or didn't navigate, so there is nothing to reuse.
+                return;
+            }
+            states.put(key, capture(driver, startUrl, landingUrl));
+        }
+    }
+
+    /**
+     * Drops the cached state of a user, e.g. after changing the password.
+     *
+     * @param user
+     */
+    public void invalidate(String user) {
+        states.keySet().removeIf(key -> key.startsWith(user + "@"));
+    }
+
+    public String getStatistics() {
+        return "Cached logins: " + states.size() + "\n"
+                + "Restored: " + restored.get() + "\n"
+                + "UI logins: " + uiLogins.get() + "\n"
+                + "Rejected by the application: " + rejected.get();
+    }
+
+    private boolean restore(WebDriver driver, String key) {
+        State state = states.get(key);
+        if (state == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() > state.expiresAt) {
+            states.remove(key, state);
+            return false;
+        }
+
+        try {
+            for (Cookie cookie : state.cookies) {
+                driver.manage().addCookie(cookie);
+            }
+            ((JavascriptExecutor) driver).executeScript(RESTORE_STORAGE_SCRIPT, state.localStorage, state.sessionStorage);
+            driver.get(state.landingUrl);
+            if (isSamePage(driver.getCurrentUrl(), state.landingUrl)) {
+                restored.incrementAndGet();
+                return true;
+            }
+        } catch (WebDriverException e) {
+            LOGGER.debug("Unable to restore session state of {}: {}", key, e.toString());
+        }
+
+        // The application sent the user back, e.g. to the login page, so the state isn't valid any more.
+        rejected.incrementAndGet();
+        states.remove(key, state);
+        driver.manage().deleteAllCookies();
+        ((JavascriptExecutor) driver).executeScript("try { window.localStorage.clear(); window.sessionStorage.clear(); } catch (e) {}");
+        driver.get(state.startUrl);
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private State capture(WebDriver driver, String startUrl, String landingUrl) {
+        List<Cookie> cookies = new ArrayList<>(driver.manage().getCookies());
+        List<Map<String, Object>> storage = (List<Map<String, Object>>) ((JavascriptExecutor) driver).executeScript(CAPTURE_STORAGE_SCRIPT);
+
+        long expiresAt = System.currentTimeMillis() + maxAgeMillis;
+        for (Cookie cookie : cookies) {
+            Date expiry = cookie.getExpiry();
+            if (expiry != null) {
+                expiresAt = Math.min(expiresAt, expiry.getTime());
+            }
+        }
+        return new State(startUrl, landingUrl, cookies, storage.get(0), storage.get(1), expiresAt);
+    }
+
+    private static boolean isSamePage(String url, String expected) {
+        return stripFragment(url).equals(stripFragment(expected));
+    }
+
+    private static String stripFragment(String url) {
+        int fragment = url.indexOf('#');
+        return fragment < 0 ? url : url.substring(0, fragment);
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getOrigin(String url) {
+        try {
+            URI uri = URI.create(url);
+            return uri.getScheme() + "://" + uri.getAuthority();
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    private static class State {
+        private final String startUrl;
+        private final String landingUrl;
+        private final List<Cookie> cookies;
+        private final Map<String, Object> localStorage;
+        private final Map<String, Object> sessionStorage;
+        private final long expiresAt;
+
+        private State(String startUrl, String landingUrl, List<Cookie> cookies, Map<String, Object> localStorage,
+                      Map<String, Object> sessionStorage, long expiresAt) {
+            this.startUrl = startUrl;
+            this.landingUrl = landingUrl;
+            this.cookies = Collections.unmodifiableList(cookies);
+            this.localStorage = localStorage;
+            this.sessionStorage = sessionStorage;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
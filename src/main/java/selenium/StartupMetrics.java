@@ -0,0 +1,110 @@
+package selenium;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import utils.LatencyStats;
+import utils.TestParameters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Latency histograms of the browser session startup phases, per web driver type.
+ * Phases:
+ * resolve        Driver binary resolution
+ * spawn          Starting the local driver process
+ * handshake      The new session request
+ * window         Maximizing or sizing the window
+ * capabilities   Adding the capabilities to the report
+ * total          Everything except capabilities, which happens later on the test thread
+ * Command line usage:
+ * -DstartupReport=target/driver-startup.json   Location of the JSON report
+ */
+public class StartupMetrics {
+    private static final Map<String, Map<String, LatencyStats>> phases = new ConcurrentHashMap<>();
+
+    public static void record(String driverName, String phase, long nanos) {
+        phases.computeIfAbsent(driverName, name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(phase, name -> new LatencyStats())
+                .record(nanos);
+    }
+
+    public static String getReport() {
+        Map<String, Map<String, Object>> report = new TreeMap<>();
+        phases.forEach((driverName, driverPhases) -> {
+            Map<String, Object> phaseReport = new TreeMap<>();
+            driverPhases.forEach((phase, stats) -> {
+                Map<String, Object> map = new LinkedHashMap<>(stats.toMap());
+                map.put("histogram", stats.getHistogram());
+                phaseReport.put(phase, map);
+            });
+            report.put(driverName, phaseReport);
+        });
+
+        try {
+            return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(report);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the report to the JSON file for comparing runs.
+     *
+     * @return The report.
+     */
+    public static String writeReport() {
+        String report = getReport();
+        Path file = Paths.get(TestParameters.getParameter("startupReport", "target/driver-startup.json"));
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.writeString(file, report);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write driver startup report", e);
+        }
+        return report;
+    }
+
+    /**
+     * Times the phases of a single session startup with the monotonic clock.
+     */
+    public static class Timer {
+        private final String driverName;
+        private final long start = System.nanoTime();
+
+        public Timer(String driverName) {
+            this.driverName = driverName;
+        }
+
+        public <T> T time(String phase, Supplier<T> action) {
+            long phaseStart = System.nanoTime();
+            try {
+                return action.get();
+            } finally {
+                record(driverName, phase, System.nanoTime() - phaseStart);
+            }
+        }
+
+        public void time(String phase, Runnable action) {
+            time(phase, () -> {
+                action.run();
+                return null;
+            });
+        }
+
+        public void finish() {
+            record(driverName, "total", System.nanoTime() - start);
+        }
+    }
+}
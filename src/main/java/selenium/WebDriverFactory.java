@@ -1,146 +1,270 @@
 package selenium;
 
-import io.github.bonigarcia.wdm.WebDriverManager;
 import org.openqa.selenium.MutableCapabilities;
 import org.openqa.selenium.Proxy;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
 import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.edge.EdgeDriver;
+import org.openqa.selenium.edge.EdgeDriverService;
 import org.openqa.selenium.edge.EdgeOptions;
 import org.openqa.selenium.firefox.FirefoxDriver;
 import org.openqa.selenium.firefox.FirefoxOptions;
+import org.openqa.selenium.firefox.GeckoDriverService;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.service.DriverService;
 import org.openqa.selenium.safari.SafariDriver;
 import org.openqa.selenium.safari.SafariOptions;
 
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 import static io.qameta.allure.Allure.step;
 
 public class WebDriverFactory {
-    private static final String REMOTEHUB_URL = "http://localhost:4444/wd/hub";
-
-    public static WebDriver createWebDriver() {
+    /**
+     * Returns the web driver type specified with -Ddriver.
+     *
+     * @return The web driver name, e.g. "chrome" or "remote_firefox".
+     */
+    public static String getDriverName() {
         String driverName = System.getProperty("driver", "");
 
         if (driverName.equals("")) {
             throw new IllegalArgumentException("Web driver must be specified with -Ddriver=");
         }
+        return driverName;
+    }
+
+    public static WebDriver createWebDriver() {
+        return createWebDriver(getDriverName());
+    }
+
+    public static WebDriver createWebDriver(String driverName) {
+        RemoteWebDriver driver = startSession(driverName);
+        logCapabilities(driverName, driver);
+        return driver;
+    }
+
+    /**
+     * Starts a browser session without adding anything to the report.
+     * Use this on background threads, where no test is running to report to.
+     *
+     * @param driverName The web driver name, e.g. "chrome" or "remote_firefox".
+     * @return
+     */
+    public static RemoteWebDriver startSession(String driverName) {
+        HostCapacity.getInstance().admit(driverName);
+        StartupMetrics.Timer timer = new StartupMetrics.Timer(driverName);
+        RemoteWebDriver started = null;
+        try {
+            started = createDriver(driverName, timer);
+        } finally {
+            HostCapacity.getInstance().started(driverName);
+            ProfileTemplate.getInstance().attach(started);
+        }
+        RemoteWebDriver driver = started;
+        NetworkArchive.getInstance().setupNetwork(driver);
+        PageActivityMonitor.install(driver);
+
+        BrowserProfile profile = BrowserProfile.current();
+        if (profile.getWindowSize() == null) {
+            timer.time("window", () -> driver.manage().window().maximize());
+        } else if (driver instanceof SafariDriver) {
+            // Other browsers get the window size as a startup argument.
+            timer.time("window", () -> driver.manage().window().setSize(profile.getWindowSize()));
+        }
+        timer.finish();
+        return driver;
+    }
+
+    /**
+     * Closes a session started with {@link #startSession(String)}, and deletes its profile clone.
+     *
+     * @param driver
+     */
+    public static void quit(RemoteWebDriver driver) {
+        try {
+            driver.quit();
+        } finally {
+            ProfileTemplate.getInstance().release(driver);
+        }
+    }
 
-        RemoteWebDriver driver;
+    protected static RemoteWebDriver createDriver(String driverName, StartupMetrics.Timer timer) {
         switch (driverName) {
             case "firefox":
-                driver = createFirefoxDriver();
-                break;
+                return createFirefoxDriver(timer);
             case "chrome":
-                WebDriverManager.chromedriver().clearDriverCache().setup();
-                WebDriverManager.chromedriver().clearResolutionCache().setup();
-                driver = createChromeDriver();
-                break;
+                return createChromeDriver(timer);
             case "edge":
-                driver = createEdgeDriver();
-                break;
+                return createEdgeDriver(timer);
             case "safari":
-                driver = createSafariDriver();
-                break;
+                return createSafariDriver(timer);
             case "remote_chrome":
-                driver = createRemoteChromeDriver();
-                break;
+                return createRemoteChromeDriver(timer);
             case "headless_chrome":
-                driver = createHeadlessChromeDriver();
-                break;
+                return createHeadlessChromeDriver(timer);
+            case "headless_firefox":
+                return createHeadlessFirefoxDriver(timer);
+            case "headless_edge":
+                return createHeadlessEdgeDriver(timer);
             case "remote_firefox":
-                driver = createRemoteFirefoxDriver();
-                break;
+                return createRemoteFirefoxDriver(timer);
             case "remote_edge":
-                driver = createRemoteEdgeDriver();
-                break;
+                return createRemoteEdgeDriver(timer);
             default:
                 throw new IllegalArgumentException("Unsupported web driver: " + driverName);
         }
-        driver.manage().window().maximize();
+    }
 
+    public static void logCapabilities(String driverName, RemoteWebDriver driver) {
+        long start = System.nanoTime();
         step("Web Driver Capabilities", (step) -> {
             driver.getCapabilities().asMap().forEach(step::parameter);
         });
-        return driver;
+        StartupMetrics.record(driverName, "capabilities", System.nanoTime() - start);
     }
 
-    protected static FirefoxDriver createFirefoxDriver() {
-        WebDriverManager.firefoxdriver().setup();
+    protected static FirefoxDriver createFirefoxDriver(StartupMetrics.Timer timer) {
         FirefoxOptions options = new FirefoxOptions();
         setupProxy(options);
-        return new FirefoxDriver(options);
+        BrowserProfile.current().apply(options);
+        ProfileTemplate.getInstance().apply(options);
+        return startFirefoxDriver(timer, options);
     }
 
-    protected static ChromeDriver createChromeDriver() {
+    protected static ChromeDriver createChromeDriver(StartupMetrics.Timer timer) {
         ChromeOptions options = new ChromeOptions();
         setupProxy(options);
-        return new ChromeDriver(options);
+        BrowserProfile.current().apply(options);
+        ProfileTemplate.getInstance().apply(options, "chrome");
+        return startChromeDriver(timer, options);
     }
 
-    protected static EdgeDriver createEdgeDriver() {
-        WebDriverManager.edgedriver().setup();
+    protected static EdgeDriver createEdgeDriver(StartupMetrics.Timer timer) {
         EdgeOptions options = new EdgeOptions();
         setupProxy(options);
-        return new EdgeDriver(options);
+        BrowserProfile.current().apply(options);
+        ProfileTemplate.getInstance().apply(options, "edge");
+        return startEdgeDriver(timer, options);
     }
 
-    protected static SafariDriver createSafariDriver() {
-        WebDriverManager.safaridriver().setup();
+    protected static SafariDriver createSafariDriver(StartupMetrics.Timer timer) {
+        // Safari ships its own driver, so there is no binary to resolve.
         SafariOptions options = new SafariOptions();
         options.setAutomaticInspection(false);
-        return new SafariDriver(options);
+        BrowserProfile.current().applyCommon(options);
+        // The Safari driver process can't be started separately, so the handshake includes it.
+        return timer.time("handshake", () -> new SafariDriver(options));
     }
 
-    protected static ChromeDriver createHeadlessChromeDriver() {
-        WebDriverManager.chromedriver().setup();
+    protected static ChromeDriver createHeadlessChromeDriver(StartupMetrics.Timer timer) {
         ChromeOptions options = new ChromeOptions();
         options.addArguments("--headless=new");
-        return new ChromeDriver(options);
+        BrowserProfile.current().apply(options);
+        ProfileTemplate.getInstance().apply(options, "chrome");
+        return startChromeDriver(timer, options);
+    }
+
+    protected static FirefoxDriver createHeadlessFirefoxDriver(StartupMetrics.Timer timer) {
+        FirefoxOptions options = new FirefoxOptions();
+        options.addArguments("-headless");
+        BrowserProfile.current().apply(options);
+        ProfileTemplate.getInstance().apply(options);
+        return startFirefoxDriver(timer, options);
     }
 
-    protected static RemoteWebDriver createRemoteFirefoxDriver() {
+    protected static EdgeDriver createHeadlessEdgeDriver(StartupMetrics.Timer timer) {
+        EdgeOptions options = new EdgeOptions();
+        options.addArguments("--headless=new");
+        BrowserProfile.current().apply(options);
+        ProfileTemplate.getInstance().apply(options, "edge");
+        return startEdgeDriver(timer, options);
+    }
+
+    protected static RemoteWebDriver createRemoteFirefoxDriver(StartupMetrics.Timer timer) {
         DesiredCapabilities capabilities = new DesiredCapabilities();
         capabilities.setBrowserName("Firefox");
         setupProxy(capabilities);
         FirefoxOptions firefoxOptions = new FirefoxOptions();
         firefoxOptions.merge(capabilities);
-        try {
-            return new RemoteWebDriver(new URL(REMOTEHUB_URL), firefoxOptions);
-        } catch (MalformedURLException e) {
-            return null;
-        }
+        BrowserProfile.current().apply(firefoxOptions);
+        return timer.time("handshake", () -> GridRouter.getInstance().createSession(firefoxOptions));
     }
 
-    protected static RemoteWebDriver createRemoteChromeDriver() {
+    protected static RemoteWebDriver createRemoteChromeDriver(StartupMetrics.Timer timer) {
         DesiredCapabilities capabilities = new DesiredCapabilities();
         capabilities.setBrowserName("Chrome");
         setupProxy(capabilities);
         ChromeOptions chromeOptions = new ChromeOptions();
         chromeOptions.addArguments("--no-sandbox");
         chromeOptions.addArguments("--disable-dev-shm-usage");
-        chromeOptions.addArguments("--start-maximized");
         chromeOptions.addArguments("--disable-infobars");
         chromeOptions.addArguments("--disable-extensions");
         chromeOptions.addArguments("--disable-notifications");
         chromeOptions.merge(capabilities);
-        try {
-            return new RemoteWebDriver(new URL(REMOTEHUB_URL), chromeOptions);
-        } catch (MalformedURLException e) {
-            return null;
+        BrowserProfile profile = BrowserProfile.current();
+        if (profile.getWindowSize() == null) {
+            chromeOptions.addArguments("--start-maximized");
         }
+        profile.apply(chromeOptions);
+        return timer.time("handshake", () -> GridRouter.getInstance().createSession(chromeOptions));
     }
 
-    protected static RemoteWebDriver createRemoteEdgeDriver() {
+    protected static RemoteWebDriver createRemoteEdgeDriver(StartupMetrics.Timer timer) {
         EdgeOptions options = new EdgeOptions();
+        BrowserProfile.current().apply(options);
+        return timer.time("handshake", () -> GridRouter.getInstance().createSession(options));
+    }
+
+    /**
+     * Starts the driver process separately from the new session request, so both can be timed.
+     */
+    private static ChromeDriver startChromeDriver(StartupMetrics.Timer timer, ChromeOptions options) {
+        File binary = timer.time("resolve", () -> DriverBinaryResolver.resolve("chrome"));
+        ChromeDriverService service = new ChromeDriverService.Builder().usingDriverExecutable(binary).build();
+        timer.time("spawn", () -> startService(service));
+        try {
+            return timer.time("handshake", () -> new ChromeDriver(service, options));
+        } catch (RuntimeException e) {
+            service.stop();
+            throw e;
+        }
+    }
+
+    private static FirefoxDriver startFirefoxDriver(StartupMetrics.Timer timer, FirefoxOptions options) {
+        File binary = timer.time("resolve", () -> DriverBinaryResolver.resolve("firefox"));
+        GeckoDriverService service = new GeckoDriverService.Builder().usingDriverExecutable(binary).build();
+        timer.time("spawn", () -> startService(service));
+        try {
+            return timer.time("handshake", () -> new FirefoxDriver(service, options));
+        } catch (RuntimeException e) {
+            service.stop();
+            throw e;
+        }
+    }
+
+    private static EdgeDriver startEdgeDriver(StartupMetrics.Timer timer, EdgeOptions options) {
+        File binary = timer.time("resolve", () -> DriverBinaryResolver.resolve("edge"));
+        EdgeDriverService service = new EdgeDriverService.Builder().usingDriverExecutable(binary).build();
+        timer.time("spawn", () -> startService(service));
+        try {
+            return timer.time("handshake", () -> new EdgeDriver(service, options));
+        } catch (RuntimeException e) {
+            service.stop();
+            throw e;
+        }
+    }
+
+    private static void startService(DriverService service) {
         try {
-            return new RemoteWebDriver(new URL(REMOTEHUB_URL), options);
-        } catch (MalformedURLException e) {
-            return null;
+            service.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start " + service.getClass().getSimpleName(), e);
         }
     }
 
@@ -0,0 +1,316 @@
+package selenium;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.LatencyStats;
+import utils.TestParameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of browser sessions per web driver type.
+ * Sessions are reset between tests and only closed after a number of uses, after a failed test, or at the end of the suite.
+ * When the maximum number of sessions is open, tests wait for a session to be released. Sessions that the
+ * {@link WebDriverProvisioner} starts ahead of demand count as open.
+ * Command line usage:
+ * -DpoolSize=8            Maximum number of open sessions per web driver type, by default 8 or the test thread count if larger
+ * -DsessionMaxUses=20     Number of tests a session is used for before it is recycled (1 disables reuse)
+ */
+public class WebDriverPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger("WebDriverPool");
+    private static final WebDriverPool instance = new WebDriverPool();
+    // Idle sessions older than this are checked before being handed out, because the grid may have closed them.
+    private static final long IDLE_VALIDATION_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final Map<String, BlockingDeque<PooledSession>> idleSessions = new ConcurrentHashMap<>();
+    // One permit per open session, leased or idle.
+    private final Map<String, Semaphore> openSessions = new ConcurrentHashMap<>();
+    private final Map<RemoteWebDriver, PooledSession> leasedSessions = new ConcurrentHashMap<>();
+    private final boolean fixedSize;
+    private int poolSize;
+    private final int maxUses;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final LatencyStats resetLatency = new LatencyStats();
+    private final LatencyStats acquireLatency = new LatencyStats();
+
+    private WebDriverPool() {
+        String size = TestParameters.getParameter("poolSize", "");
+        fixedSize = !size.equals("");
+        poolSize = fixedSize ? Integer.parseInt(size) : 8;
+        maxUses = Integer.parseInt(TestParameters.getParameter("sessionMaxUses", "20"));
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "WebDriverPool shutdown"));
+    }
+
+    public static WebDriverPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Makes room for a session per test thread, unless -DpoolSize is given. The pool only grows.
+     *
+     * @param threads The resolved number of test threads, e.g. for "-Dthreads=auto".
+     */
+    public synchronized void setThreadCount(int threads) {
+        if (fixedSize || threads <= poolSize) {
+            return;
+        }
+        int added = threads - poolSize;
+        poolSize = threads;
+        openSessions.values().forEach(open -> open.release(added));
+        LOGGER.info("Pool size: {} sessions per web driver type", poolSize);
+    }
+
+    /**
+     * Hands out a warm session for the current web driver type.
+     * If none are idle, a pre-warmed session is taken from the {@link WebDriverProvisioner}, or a new one is started.
+     * When the maximum number of sessions is open, this waits until another test releases one.
+     *
+     * @param startUrl The page to open.
+     * @return A session on the start URL with no cookies or storage from earlier tests.
+     */
+    public RemoteWebDriver acquire(String startUrl) {
+        long start = System.nanoTime();
+        String driverName = WebDriverFactory.getDriverName();
+        BlockingDeque<PooledSession> idle = getIdleSessions(driverName);
+        Semaphore open = getOpenSessions(driverName);
+
+        PooledSession session = null;
+        RemoteWebDriver driver = null;
+        boolean waited = false;
+        while (session == null && driver == null) {
+            session = waited ? poll(idle) : idle.pollFirst();
+            if (session != null) {
+                if (isAlive(session)) {
+                    hits.incrementAndGet();
+                } else {
+                    close(session.driver, driverName);
+                    session = null;
+                }
+            } else if ((driver = WebDriverProvisioner.getInstance().take(driverName)) != null) {
+                // A pre-warmed session already holds a permit.
+                break;
+            } else if (open.tryAcquire()) {
+                break;
+            } else {
+                // All sessions are open, so wait for another test to release one.
+                waited = true;
+            }
+        }
+
+        if (session != null) {
+            session.driver.get(startUrl);
+            PageLoadTimings.record(session.driver, true);
+        } else {
+            misses.incrementAndGet();
+            String mainWindow;
+            try {
+                if (driver == null) {
+                    driver = WebDriverFactory.startSession(driverName);
+                    driver.get(startUrl);
+                    PageLoadTimings.record(driver, false);
+                }
+                mainWindow = driver.getWindowHandle();
+            } catch (RuntimeException e) {
+                if (driver != null) {
+                    quietly(driver);
+                }
+                open.release();
+                throw e;
+            }
+            WebDriverFactory.logCapabilities(driverName, driver);
+            session = new PooledSession(driver, driverName, mainWindow);
+        }
+        session.uses++;
+        leasedSessions.put(session.driver, session);
+        acquireLatency.recordSince(start);
+        return session.driver;
+    }
+
+    /**
+     * Returns a session to the pool after a test.
+     *
+     * @param driver The session returned by {@link #acquire(String)}.
+     * @param failed Whether the test failed. Sessions of failed tests are never reused.
+     */
+    public void release(RemoteWebDriver driver, boolean failed) {
+        PooledSession session = leasedSessions.remove(driver);
+        if (session == null) {
+            recycled.incrementAndGet();
+            WebDriverFactory.quit(driver);
+            return;
+        }
+        if (failed || session.uses >= maxUses) {
+            recycled.incrementAndGet();
+            close(driver, session.driverName);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            reset(driver, session.mainWindow);
+        } catch (WebDriverException e) {
+            LOGGER.warn("Unable to reset browser session, closing it: {}", e.toString());
+            recycled.incrementAndGet();
+            close(driver, session.driverName);
+            return;
+        }
+        resetLatency.recordSince(start);
+
+        session.releasedAt = System.nanoTime();
+        getIdleSessions(session.driverName).offerFirst(session);
+    }
+
+    /**
+     * Removes a session from the pool without closing it, e.g. to keep the browser open with "-Dkeep".
+     *
+     * @param driver
+     */
+    public void detach(RemoteWebDriver driver) {
+        PooledSession session = leasedSessions.remove(driver);
+        if (session != null) {
+            getOpenSessions(session.driverName).release();
+        }
+    }
+
+    /**
+     * Closes all sessions. Sessions that are still leased are closed as well.
+     */
+    public void shutdown() {
+        List<PooledSession> sessions = new ArrayList<>(leasedSessions.values());
+        leasedSessions.clear();
+        for (BlockingDeque<PooledSession> idle : idleSessions.values()) {
+            PooledSession session;
+            while ((session = idle.pollFirst()) != null) {
+                sessions.add(session);
+            }
+        }
+        sessions.forEach(session -> close(session.driver, session.driverName));
+    }
+
+    public String getStatistics() {
+        int idle = idleSessions.values().stream().mapToInt(BlockingDeque::size).sum();
+        return "Hits: " + hits.get() + "\n"
+                + "Misses: " + misses.get() + "\n"
+                + "Recycled: " + recycled.get() + "\n"
+                + "Idle: " + idle + "\n"
+                + "Reset latency: " + resetLatency + "\n"
+                + "Acquire latency: " + acquireLatency;
+    }
+
+    /**
+     * Clears all state a test may leave behind in a browser session.
+     * Cookies and storage can only be cleared for the current domain, so this is done before leaving the page.
+     *
+     * @param driver
+     * @param mainWindow The window the session started with. Other windows, e.g. popups, are closed.
+     */
+    protected void reset(RemoteWebDriver driver, String mainWindow) {
+        List<String> handles = new ArrayList<>(driver.getWindowHandles());
+        if (!handles.contains(mainWindow)) {
+            throw new WebDriverException("The test closed the main window");
+        }
+        if (handles.size() > 1) {
+            for (String handle : handles) {
+                if (!handle.equals(mainWindow)) {
+                    driver.switchTo().window(handle);
+                    driver.close();
+                }
+            }
+        }
+        driver.switchTo().window(mainWindow);
+        driver.manage().deleteAllCookies();
+        driver.executeScript("try { window.localStorage.clear(); window.sessionStorage.clear(); } catch (e) {}");
+        driver.get("about:blank");
+    }
+
+    private boolean isAlive(PooledSession session) {
+        if (session.driver.getSessionId() == null) {
+            return false;
+        }
+        if (System.nanoTime() - session.releasedAt < IDLE_VALIDATION_NANOS) {
+            return true;
+        }
+        try {
+            session.driver.getWindowHandle();
+            return true;
+        } catch (WebDriverException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reserves room for a session that is started outside the pool, e.g. by the {@link WebDriverProvisioner}.
+     * The session then counts as open until it is closed by the pool, or the reservation is cancelled.
+     *
+     * @return False if no room came free in time.
+     */
+    boolean reserve(String driverName, long timeout, TimeUnit unit) throws InterruptedException {
+        return getOpenSessions(driverName).tryAcquire(timeout, unit);
+    }
+
+    /**
+     * Cancels a reservation, e.g. when the session failed to start or was closed before the pool took it.
+     *
+     * @param driverName
+     */
+    void cancelReservation(String driverName) {
+        getOpenSessions(driverName).release();
+    }
+
+    private BlockingDeque<PooledSession> getIdleSessions(String driverName) {
+        // Unbounded, the permits limit the number of sessions.
+        return idleSessions.computeIfAbsent(driverName, name -> new LinkedBlockingDeque<>());
+    }
+
+    private synchronized Semaphore getOpenSessions(String driverName) {
+        return openSessions.computeIfAbsent(driverName, name -> new Semaphore(poolSize));
+    }
+
+    private static PooledSession poll(BlockingDeque<PooledSession> idle) {
+        try {
+            return idle.pollFirst(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebDriverException("Interrupted while waiting for a browser session", e);
+        }
+    }
+
+    private void close(RemoteWebDriver driver, String driverName) {
+        quietly(driver);
+        getOpenSessions(driverName).release();
+    }
+
+    private static void quietly(RemoteWebDriver driver) {
+        try {
+            WebDriverFactory.quit(driver);
+        } catch (Exception e) {
+            LOGGER.debug("Unable to close browser: {}", e.toString());
+        }
+    }
+
+    private static class PooledSession {
+        private final RemoteWebDriver driver;
+        private final String driverName;
+        private final String mainWindow;
+        private int uses;
+        private long releasedAt;
+
+        private PooledSession(RemoteWebDriver driver, String driverName, String mainWindow) {
+            this.driver = driver;
+            this.driverName = driverName;
+            this.mainWindow = mainWindow;
+        }
+    }
+}
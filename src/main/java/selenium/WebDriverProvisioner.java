@@ -0,0 +1,193 @@
+package selenium;
+
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.LatencyStats;
+
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Boots browser sessions on background threads ahead of demand.
+ * Every session that is taken is replaced, so a fixed number of sessions is always starting or ready.
+ * Each session holds a place in the {@link WebDriverPool} from before it starts, so the pool size limits the browsers
+ * that are open, including these.
+ */
+public class WebDriverProvisioner {
+    private static final Logger LOGGER = LoggerFactory.getLogger("WebDriverProvisioner");
+    private static final WebDriverProvisioner instance = new WebDriverProvisioner();
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+    private static final long RESERVE_POLL_SECONDS = 1;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong wasted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong notReady = new AtomicLong();
+    private final LatencyStats takeLatency = new LatencyStats();
+    private volatile ExecutorService executor;
+    private volatile CompletionService<RemoteWebDriver> sessions;
+    private String driverName;
+    private String startUrl;
+
+    private WebDriverProvisioner() {
+    }
+
+    public static WebDriverProvisioner getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts booting sessions in the background.
+     *
+     * @param driverName The web driver name, e.g. "chrome" or "remote_firefox".
+     * @param startUrl   The page each session opens after starting.
+     * @param count      The number of sessions to keep starting or ready.
+     */
+    public synchronized void start(String driverName, String startUrl, int count) {
+        if (executor != null || count <= 0) {
+            return;
+        }
+        this.driverName = driverName;
+        this.startUrl = startUrl;
+        executor = Executors.newFixedThreadPool(count, runnable -> {
+            Thread thread = new Thread(runnable, "WebDriverProvisioner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sessions = new ExecutorCompletionService<>(executor);
+        for (int i = 0; i < count; i++) {
+            provision();
+        }
+    }
+
+    /**
+     * Takes the first session that finished starting. Doesn't wait for sessions that are still starting, because
+     * those may have only just started, and the caller can start a session itself in the same time.
+     * The session keeps its place in the {@link WebDriverPool}.
+     *
+     * @param driverName The web driver name the caller needs.
+     * @return A session already on the start URL, or null if the provisioner is not running or starts another web
+     * driver type, no session is ready yet, or the session failed to start.
+     */
+    public RemoteWebDriver take(String driverName) {
+        CompletionService<RemoteWebDriver> current = sessions;
+        if (current == null || !driverName.equals(this.driverName)) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        try {
+            Future<RemoteWebDriver> future = current.poll();
+            if (future == null) {
+                notReady.incrementAndGet();
+                return null;
+            }
+            inFlight.decrementAndGet();
+            provision();
+            RemoteWebDriver driver = future.get();
+            if (driver != null) {
+                served.incrementAndGet();
+            }
+            return driver;
+        } catch (ExecutionException e) {
+            failed.incrementAndGet();
+            LOGGER.warn("Pre-warmed browser failed to start: {}", e.getCause().toString());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            takeLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Stops booting sessions and closes the ones nobody took.
+     */
+    public synchronized void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        CompletionService<RemoteWebDriver> current = sessions;
+        sessions = null;
+        executor.shutdown();
+
+        try {
+            while (inFlight.get() > 0) {
+                Future<RemoteWebDriver> future = current.poll(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (future == null) {
+                    LOGGER.warn("{} pre-warmed browsers did not finish starting", inFlight.get());
+                    break;
+                }
+                inFlight.decrementAndGet();
+                try {
+                    RemoteWebDriver driver = future.get();
+                    if (driver != null) {
+                        WebDriverFactory.quit(driver);
+                        WebDriverPool.getInstance().cancelReservation(driverName);
+                        wasted.incrementAndGet();
+                    }
+                } catch (ExecutionException e) {
+                    failed.incrementAndGet();
+                } catch (Exception e) {
+                    LOGGER.debug("Unable to close pre-warmed browser: {}", e.toString());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    public String getStatistics() {
+        return "Served: " + served.get() + "\n"
+                + "Wasted: " + wasted.get() + "\n"
+                + "Failed: " + failed.get() + "\n"
+                + "None ready: " + notReady.get() + "\n"
+                + "Take latency: " + takeLatency;
+    }
+
+    private void provision() {
+        CompletionService<RemoteWebDriver> current = sessions;
+        if (current == null) {
+            return;
+        }
+        inFlight.incrementAndGet();
+        try {
+            current.submit(() -> {
+                // Waits for room in the pool, unless the provisioner shuts down first.
+                while (!WebDriverPool.getInstance().reserve(driverName, RESERVE_POLL_SECONDS, TimeUnit.SECONDS)) {
+                    if (sessions == null) {
+                        return null;
+                    }
+                }
+                RemoteWebDriver driver = null;
+                try {
+                    driver = WebDriverFactory.startSession(driverName);
+                    driver.get(startUrl);
+                    PageLoadTimings.record(driver, false);
+                    return driver;
+                } catch (RuntimeException e) {
+                    if (driver != null) {
+                        WebDriverFactory.quit(driver);
+                    }
+                    WebDriverPool.getInstance().cancelReservation(driverName);
+                    throw e;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down.
+            inFlight.decrementAndGet();
+        }
+    }
+}
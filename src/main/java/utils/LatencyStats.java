@@ -0,0 +1,134 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread safe latency recorder.
+ * Keeps running totals for all samples and the most recent samples for percentiles.
+ * The sample buffer grows with the number of samples, so rarely used recorders stay small.
+ */
+public class LatencyStats {
+    private static final int MAX_SAMPLES = 10000;
+    private static final int INITIAL_SAMPLES = 16;
+    private static final long[] HISTOGRAM_BOUNDS_MILLIS = {50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private long[] samples = new long[INITIAL_SAMPLES];
+    private long count;
+    private long totalNanos;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos;
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} start value.
+     *
+     * @param startNanos
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public synchronized void record(long nanos) {
+        if (count == samples.length && count < MAX_SAMPLES) {
+            samples = Arrays.copyOf(samples, Math.min(samples.length * 2, MAX_SAMPLES));
+        }
+        samples[(int) (count % MAX_SAMPLES)] = nanos;
+        count++;
+        totalNanos += nanos;
+        minNanos = Math.min(minNanos, nanos);
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getTotalMillis() {
+        return toMillis(totalNanos);
+    }
+
+    public synchronized double getMeanMillis() {
+        return count == 0 ? 0 : toMillis(totalNanos) / count;
+    }
+
+    public synchronized double getMaxMillis() {
+        return toMillis(maxNanos);
+    }
+
+    /**
+     * Returns a percentile of the most recent samples.
+     *
+     * @param percentile A value between 0 and 100.
+     * @return
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        int size = (int) Math.min(count, MAX_SAMPLES);
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return toMillis(sorted[Math.max(0, Math.min(index, size - 1))]);
+    }
+
+    /**
+     * Returns a summary of the recorded samples in milliseconds, e.g. for JSON reports.
+     *
+     * @return
+     */
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", count);
+        map.put("min", count == 0 ? 0 : round(toMillis(minNanos)));
+        map.put("mean", round(getMeanMillis()));
+        map.put("p50", round(getPercentileMillis(50)));
+        map.put("p90", round(getPercentileMillis(90)));
+        map.put("p99", round(getPercentileMillis(99)));
+        map.put("max", round(getMaxMillis()));
+        return map;
+    }
+
+    /**
+     * Counts the most recent samples per latency bucket.
+     *
+     * @return Bucket labels, e.g. "<=250ms", mapped to the number of samples in that bucket.
+     */
+    public synchronized Map<String, Long> getHistogram() {
+        long[] counts = new long[HISTOGRAM_BOUNDS_MILLIS.length + 1];
+        int size = (int) Math.min(count, MAX_SAMPLES);
+        for (int i = 0; i < size; i++) {
+            double millis = toMillis(samples[i]);
+            int bucket = 0;
+            while (bucket < HISTOGRAM_BOUNDS_MILLIS.length && millis > HISTOGRAM_BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            counts[bucket]++;
+        }
+
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < HISTOGRAM_BOUNDS_MILLIS.length; i++) {
+            histogram.put("<=" + HISTOGRAM_BOUNDS_MILLIS[i] + "ms", counts[i]);
+        }
+        histogram.put(">" + HISTOGRAM_BOUNDS_MILLIS[HISTOGRAM_BOUNDS_MILLIS.length - 1] + "ms", counts[HISTOGRAM_BOUNDS_MILLIS.length]);
+        return histogram;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (count == 0) {
+            return "count=0";
+        }
+        return String.format("count=%d min=%.1fms mean=%.1fms p50=%.1fms p90=%.1fms max=%.1fms",
+                count, toMillis(minNanos), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(90), getMaxMillis());
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static double round(double millis) {
+        return Math.round(millis * 10) / 10.0;
+    }
+}
@@ -0,0 +1,215 @@
+package utils;
+
+import io.qameta.allure.Allure;
+import io.qameta.allure.AllureLifecycle;
+import io.qameta.allure.model.Attachment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Adds screenshots to the Allure report without writing them on the test thread.
+ * The attachment is registered in the current step on the test thread, and the image is scaled, encoded and written
+ * by background threads. A screenshot that is identical to the previous one on the same thread refers to the
+ * existing file instead of writing a new one. The memory used by queued screenshots is limited; when the limit
+ * is reached the test thread waits for the background threads.
+ * Command line usage:
+ * -DscreenshotScale=0.5          Scale the screenshots before writing them
+ * -DscreenshotFormat=jpg         Write JPEG instead of PNG files
+ * -DscreenshotThreads=2          Number of background threads
+ * -DscreenshotMemoryMB=64        Memory for queued screenshots
+ */
+public class ScreenshotService {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotService");
+    private static final ScreenshotService instance = new ScreenshotService();
+    private static final float JPEG_QUALITY = 0.8f;
+
+    private final double scale;
+    private final boolean jpeg;
+    private final int memoryKilobytes;
+    private final Semaphore memory;
+    private final ExecutorService executor;
+    private final ThreadLocal<Frame> previousFrames = new ThreadLocal<>();
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final LatencyStats inlineTime = new LatencyStats();
+    private final LatencyStats backgroundTime = new LatencyStats();
+
+    private ScreenshotService() {
+        scale = Double.parseDouble(TestParameters.getParameter("screenshotScale", "1"));
+        jpeg = TestParameters.getParameter("screenshotFormat", "png").equals("jpg");
+        memoryKilobytes = Integer.parseInt(TestParameters.getParameter("screenshotMemoryMB", "64")) * 1024;
+        memory = new Semaphore(memoryKilobytes);
+        int threads = Integer.parseInt(TestParameters.getParameter("screenshotThreads", "2"));
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "screenshot-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "ScreenshotService flush"));
+    }
+
+    public static ScreenshotService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Adds a screenshot to the current step or test.
+     *
+     * @param name
+     * @param png  The screenshot as returned by the driver.
+     */
+    public void attach(String name, byte[] png) {
+        long start = System.nanoTime();
+        captured.incrementAndGet();
+        String attachmentName = "[Screenshot] " + name;
+        Frame frame = new Frame(png);
+        Frame previous = previousFrames.get();
+        if (previous != null && previous.isSameImage(frame)) {
+            duplicates.incrementAndGet();
+            addExistingAttachment(attachmentName, previous.source);
+            inlineTime.recordSince(start);
+            return;
+        }
+
+        AllureLifecycle lifecycle = Allure.getLifecycle();
+        frame.source = lifecycle.prepareAttachment(attachmentName, jpeg ? "image/jpeg" : "image/png", jpeg ? ".jpg" : ".png");
+        previousFrames.set(frame);
+
+        int permits = Math.max(1, Math.min(memoryKilobytes, png.length / 1024));
+        memory.acquireUninterruptibly(permits);
+        try {
+            executor.execute(() -> {
+                long writeStart = System.nanoTime();
+                try {
+                    byte[] image = encode(png);
+                    lifecycle.writeAttachment(frame.source, new ByteArrayInputStream(image));
+                    writtenBytes.addAndGet(image.length);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    LOGGER.warn("Unable to write screenshot {}: {}", name, e.toString());
+                } finally {
+                    memory.release(permits);
+                    backgroundTime.recordSince(writeStart);
+                }
+            });
+        } catch (RuntimeException e) {
+            memory.release(permits);
+            throw e;
+        }
+        inlineTime.recordSince(start);
+    }
+
+    /**
+     * Waits until all queued screenshots are written. Call this before the report is generated.
+     */
+    public void flush() {
+        try {
+            // Every queued screenshot holds memory permits until it is written.
+            if (memory.tryAcquire(memoryKilobytes, 5, TimeUnit.MINUTES)) {
+                memory.release(memoryKilobytes);
+            } else {
+                LOGGER.warn("Timed out writing screenshots");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getStatistics() {
+        return "Screenshots: " + captured.get() + "\n"
+                + "Same as previous: " + duplicates.get() + "\n"
+                + "Failed: " + failures.get() + "\n"
+                + "Written: " + writtenBytes.get() / 1024 + " KB\n"
+                + "Test thread: " + inlineTime + "\n"
+                + "Background: " + backgroundTime;
+    }
+
+    private void addExistingAttachment(String name, String source) {
+        Attachment attachment = new Attachment().setName(name).setSource(source).setType(jpeg ? "image/jpeg" : "image/png");
+        AllureLifecycle lifecycle = Allure.getLifecycle();
+        Optional<String> testCase = lifecycle.getCurrentTestCase();
+        Optional<String> current = lifecycle.getCurrentTestCaseOrStep();
+        if (current.isPresent() && !current.equals(testCase)) {
+            lifecycle.updateStep(step -> step.getAttachments().add(attachment));
+        } else if (testCase.isPresent()) {
+            lifecycle.updateTestCase(result -> result.getAttachments().add(attachment));
+        }
+    }
+
+    private byte[] encode(byte[] png) throws IOException {
+        if (scale == 1 && !jpeg) {
+            return png;
+        }
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        if (image == null) {
+            // Not an image, e.g. the placeholder for a failed screenshot.
+            return png;
+        }
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        // JPEG has no alpha channel.
+        BufferedImage scaled = new BufferedImage(width, height, jpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!jpeg) {
+            ImageIO.write(scaled, "png", output);
+            return output.toByteArray();
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            ImageWriteParam parameters = writer.getDefaultWriteParam();
+            parameters.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            parameters.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(scaled, null, null), parameters);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    private static class Frame {
+        private final long checksum;
+        private final int length;
+        private String source;
+
+        private Frame(byte[] png) {
+            CRC32 crc = new CRC32();
+            crc.update(png);
+            checksum = crc.getValue();
+            length = png.length;
+        }
+
+        private boolean isSameImage(Frame other) {
+            return checksum == other.checksum && length == other.length;
+        }
+    }
+}
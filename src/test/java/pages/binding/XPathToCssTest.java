@@ -0,0 +1,56 @@
+package pages.binding;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class XPathToCssTest {
+    @DataProvider
+    public Object[][] equivalents() {
+        return new Object[][]{
+                {"//input[@id='user-name']", "input#user-name"},
+                {"//div[@class='item']/span", "div[class='item'] > span"},
+                {"//ul//li[2]", "ul li:nth-of-type(2)"},
+                {".//a/b", ":scope a > b"},
+                {"//*[@data-test]", "[data-test]"},
+                {"//button[contains(@class, 'btn') and @type='submit']", "button[class*='btn'][type='submit']"},
+                {"//a[starts-with(@href, '/cart')]", "a[href^='/cart']"},
+                {"//div[contains(concat(' ', normalize-space(@class), ' '), ' inventory_item ')]", "div.inventory_item"},
+                {"//span[@title='x and y']", "span[title='x and y']"},
+                {"//span[@title=\"it's\"]", "span[title=\"it's\"]"},
+                {"//span[@id='1st']", "span[id='1st']"},
+        };
+    }
+
+    @Test(dataProvider = "equivalents")
+    public void convertsToEquivalentCss(String xpath, String css) {
+        Assert.assertEquals(XPathToCss.convert(xpath), css);
+    }
+
+    @DataProvider
+    public Object[][] withoutEquivalent() {
+        return new Object[][]{
+                {"/html/body"},
+                {"./div"},
+                {"//div[text()='Login']"},
+                {"//div/parent::section"},
+                {"//*[1]"},
+                {"//div[@id='a' or @id='b']"},
+                {"//div[@title='unclosed]"},
+        };
+    }
+
+    @Test(dataProvider = "withoutEquivalent")
+    public void returnsNullWithoutEquivalent(String xpath) {
+        Assert.assertNull(XPathToCss.convert(xpath));
+    }
+
+    @Test
+    public void escapesQuotesAndBackslashes() {
+        Assert.assertEquals(XPathToCss.quote("plain"), "'plain'");
+        Assert.assertEquals(XPathToCss.quote("it's"), "\"it's\"");
+        Assert.assertEquals(XPathToCss.quote("it's \"quoted\""), "\"it's \\\"quoted\\\"\"");
+        Assert.assertEquals(XPathToCss.quote("a\\b"), "'a\\\\b'");
+        Assert.assertEquals(XPathToCss.quote("line\nbreak"), "'line\\a break'");
+    }
+}
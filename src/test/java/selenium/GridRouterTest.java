@@ -0,0 +1,210 @@
+package selenium;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openqa.selenium.SessionNotCreatedException;
+import org.openqa.selenium.remote.UnreachableBrowserException;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the router against local stand-in hubs that only serve a Grid 4 status.
+ */
+public class GridRouterTest {
+    private final List<HttpServer> servers = new ArrayList<>();
+    private String busyHub;
+    private String idleHub;
+    private String downHub;
+    private String firefoxHub;
+
+    @BeforeClass
+    public void startHubs() throws IOException {
+        busyHub = startHub(1, 3, "chrome");
+        idleHub = startHub(3, 1, "chrome");
+        firefoxHub = startHub(4, 0, "firefox");
+        downHub = "http://127.0.0.1:1/wd/hub";
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopHubs() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    public void routesToLeastLoadedHub() {
+        GridRouter router = new GridRouter(Arrays.asList(downHub, busyHub, idleHub), 4);
+        List<GridRouter.Hub> ranked = router.rankHubs();
+
+        Assert.assertEquals(ranked.get(0).getUrl().toString(), idleHub);
+        Assert.assertEquals(ranked.get(1).getUrl().toString(), busyHub);
+        Assert.assertEquals(ranked.get(2).getUrl().toString(), downHub);
+    }
+
+    @Test
+    public void countsOnlySlotsOfRequestedBrowser() {
+        GridRouter router = new GridRouter(Arrays.asList(firefoxHub, busyHub), 4);
+
+        Assert.assertEquals(router.rankHubs("chrome").get(0).getUrl().toString(), busyHub);
+        Assert.assertEquals(router.rankHubs("firefox").get(0).getUrl().toString(), firefoxHub);
+        Assert.assertEquals(router.rankHubs().get(0).getUrl().toString(), firefoxHub);
+        Assert.assertEquals(router.getFreeSlots(), 5);
+    }
+
+    @Test
+    public void failsOverToNextHub() {
+        List<String> requests = new CopyOnWriteArrayList<>();
+        GridRouter router = new GridRouter(Arrays.asList(busyHub, idleHub), 4, (url, capabilities) -> {
+            requests.add(url.toString());
+            if (url.toString().equals(idleHub)) {
+                throw new UnreachableBrowserException("Connection refused");
+            }
+            return null;
+        });
+
+        router.createSession(null);
+
+        Assert.assertEquals(requests, Arrays.asList(idleHub, busyHub));
+        // The unreachable hub is out of rotation.
+        Assert.assertEquals(router.rankHubs().get(0).getUrl().toString(), busyHub);
+    }
+
+    @Test
+    public void keepsHubThatRejectsSession() {
+        List<String> requests = new CopyOnWriteArrayList<>();
+        GridRouter router = new GridRouter(Arrays.asList(busyHub, idleHub), 4, (url, capabilities) -> {
+            requests.add(url.toString());
+            throw new SessionNotCreatedException("Could not start a new session");
+        });
+
+        Assert.expectThrows(SessionNotCreatedException.class, () -> router.createSession(null));
+
+        Assert.assertEquals(requests, Arrays.asList(idleHub, busyHub));
+        Assert.assertEquals(router.rankHubs().get(0).getUrl().toString(), idleHub);
+    }
+
+    @Test
+    public void limitsRequestsInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        GridRouter router = new GridRouter(Collections.singletonList(idleHub), 2, (url, capabilities) -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return null;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<?>> requests = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                requests.add(executor.submit(() -> router.createSession(null)));
+            }
+            for (Future<?> request : requests) {
+                request.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertTrue(maxInFlight.get() <= 2, "Requests in flight: " + maxInFlight.get());
+    }
+
+    @Test
+    public void queuesOnHubWithCapacityWhenAnotherHubFails() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch busyHubFailed = new CountDownLatch(1);
+        List<String> requests = new CopyOnWriteArrayList<>();
+        GridRouter router = new GridRouter(Arrays.asList(busyHub, idleHub), 1, (url, capabilities) -> {
+            requests.add(url.toString());
+            if (url.toString().equals(busyHub)) {
+                busyHubFailed.countDown();
+                throw new UnreachableBrowserException("Connection refused");
+            }
+            if (firstStarted.getCount() > 0) {
+                firstStarted.countDown();
+                try {
+                    releaseFirst.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return null;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // The first request holds the only request slot of the idle hub.
+            Future<?> first = executor.submit(() -> router.createSession(null));
+            Assert.assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+            // The second request fails on the busy hub, and then waits for the idle hub.
+            Future<?> second = executor.submit(() -> router.createSession(null));
+            Assert.assertTrue(busyHubFailed.await(10, TimeUnit.SECONDS));
+            releaseFirst.countDown();
+
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(requests, Arrays.asList(idleHub, busyHub, idleHub));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsInvalidHubUrl() {
+        new GridRouter(Collections.singletonList("localhost:4444"), 4);
+    }
+
+    /**
+     * Starts a stand-in hub with one node.
+     *
+     * @param free The number of free slots.
+     * @param busy The number of slots with a session.
+     * @param browserName The browser of every slot.
+     * @return The hub URL.
+     */
+    private String startHub(int free, int busy, String browserName) throws IOException {
+        String stereotype = "\"stereotype\": {\"browserName\": \"" + browserName + "\"}";
+        List<String> slots = new ArrayList<>();
+        for (int i = 0; i < free; i++) {
+            slots.add("{" + stereotype + ", \"session\": null}");
+        }
+        for (int i = 0; i < busy; i++) {
+            slots.add("{" + stereotype + ", \"session\": {\"sessionId\": \"" + i + "\"}}");
+        }
+        byte[] status = ("{\"value\": {\"ready\": true, \"nodes\": [{\"availability\": \"UP\", \"slots\": ["
+                + String.join(",", slots) + "]}]}}").getBytes(StandardCharsets.UTF_8);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/status", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, status.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(status);
+            }
+        });
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/wd/hub";
+    }
+}
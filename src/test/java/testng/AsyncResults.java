@@ -0,0 +1,68 @@
+package testng;
+
+import io.qameta.allure.Allure;
+import io.qameta.allure.AllureLifecycle;
+import io.qameta.allure.FileSystemResultsWriter;
+import io.qameta.allure.util.PropertiesUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IExecutionListener;
+import utils.TestParameters;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the Allure results and attachments on a background thread ({@link AsyncResultsWriter}), so steps,
+ * soft assertions and attachments don't wait for the disk. Everything is written at the end of the run, and by a
+ * shutdown hook when the JVM exits early, e.g. on System.exit or Ctrl+C.
+ * Registered through META-INF/services before the Allure TestNG listener, because that listener keeps the
+ * lifecycle that exists when it is created.
+ * Command line usage:
+ * -DallureAsync=off          Write Allure results on the test threads
+ * -DallureQueueMB=64         Memory for results waiting to be written, test threads wait when it is full
+ */
+public class AsyncResults implements IExecutionListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger("AsyncResults");
+    private static final long FLUSH_TIMEOUT_MINUTES = 5;
+    private static AsyncResultsWriter writer;
+
+    public AsyncResults() {
+        install();
+    }
+
+    private static synchronized void install() {
+        // The rerun creates the listeners again, but keeps the installed writer.
+        if (writer != null || TestParameters.getParameter("allureAsync", "on").equals("off")) {
+            return;
+        }
+        String directory = PropertiesUtils.loadAllureProperties().getProperty("allure.results.directory", "allure-results");
+        long maxQueuedBytes = Long.parseLong(TestParameters.getParameter("allureQueueMB", "64")) * 1024 * 1024;
+        writer = new AsyncResultsWriter(new FileSystemResultsWriter(Paths.get(directory)), maxQueuedBytes);
+        Allure.setLifecycle(new AllureLifecycle(writer));
+        Runtime.getRuntime().addShutdownHook(new Thread(AsyncResults::flush, "allure-results-flush"));
+    }
+
+    /**
+     * Waits until all queued results are written. Call this before the report is generated.
+     */
+    public static void flush() {
+        AsyncResultsWriter current;
+        synchronized (AsyncResults.class) {
+            current = writer;
+        }
+        if (current != null && !current.flush(FLUSH_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+            LOGGER.warn("Timed out writing Allure results");
+        }
+    }
+
+    @Override
+    public void onExecutionFinish() {
+        flush();
+        synchronized (AsyncResults.class) {
+            if (writer != null) {
+                LOGGER.info("Allure results\n{}", writer.getStatistics());
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package testng;
+
+import io.qameta.allure.AllureResultsWriteException;
+import io.qameta.allure.AllureResultsWriter;
+import io.qameta.allure.model.TestResult;
+import io.qameta.allure.model.TestResultContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Queues Allure results and attachments, and writes them with another writer on a background thread.
+ * The queue is limited by the size of the queued attachments; when it is full, the test threads wait for the
+ * background thread. Results are only written when Allure is done with them, so they don't change while queued.
+ */
+public class AsyncResultsWriter implements AllureResultsWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger("AsyncResultsWriter");
+    // Rough size of a result file, so many small results also count towards the limit.
+    private static final int RESULT_BYTES = 4096;
+
+    private final AllureResultsWriter writer;
+    private final long maxQueuedBytes;
+    private final Deque<Entry> queue = new ArrayDeque<>();
+    private long queuedBytes;
+    private boolean writing;
+    private long written;
+    private long batches;
+    private long failures;
+    private long waitedMillis;
+
+    /**
+     * @param writer         Writes the results, e.g. to the results directory.
+     * @param maxQueuedBytes Memory for queued results. A single larger attachment is still accepted when the queue is empty.
+     */
+    public AsyncResultsWriter(AllureResultsWriter writer, long maxQueuedBytes) {
+        this.writer = writer;
+        this.maxQueuedBytes = maxQueuedBytes;
+        Thread thread = new Thread(this::run, "allure-results-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void write(TestResult testResult) {
+        enqueue(RESULT_BYTES, target -> target.write(testResult));
+    }
+
+    @Override
+    public void write(TestResultContainer testResultContainer) {
+        enqueue(RESULT_BYTES, target -> target.write(testResultContainer));
+    }
+
+    @Override
+    public void write(String source, InputStream attachment) {
+        // The caller may close or reuse the stream, so it is read on the test thread.
+        byte[] bytes;
+        try {
+            bytes = attachment.readAllBytes();
+        } catch (IOException e) {
+            throw new AllureResultsWriteException("Could not read attachment " + source, e);
+        }
+        enqueue(bytes.length, target -> target.write(source, new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Waits until everything queued so far is written.
+     *
+     * @param timeout
+     * @param unit
+     * @return False when the timeout passed first.
+     */
+    public synchronized boolean flush(long timeout, TimeUnit unit) {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        try {
+            while (!queue.isEmpty() || writing) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized String getStatistics() {
+        return "Written: " + written + " in " + batches + " batches\n"
+                + "Queued: " + queue.size() + "\n"
+                + "Failed: " + failures + "\n"
+                + "Test threads waited: " + waitedMillis + " ms";
+    }
+
+    private synchronized void enqueue(int bytes, Consumer<AllureResultsWriter> write) {
+        long start = System.currentTimeMillis();
+        boolean waited = false;
+        while (queuedBytes > 0 && queuedBytes + bytes > maxQueuedBytes) {
+            waited = true;
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // Write it anyway, rather than losing it from the report.
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (waited) {
+            waitedMillis += System.currentTimeMillis() - start;
+        }
+        queue.add(new Entry(bytes, write));
+        queuedBytes += bytes;
+        notifyAll();
+    }
+
+    private void run() {
+        while (true) {
+            List<Entry> batch;
+            synchronized (this) {
+                while (queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Keep writing, the thread only stops with the JVM.
+                    }
+                }
+                // Everything queued so far is written in one go, without waking the test threads per file.
+                batch = new ArrayList<>(queue);
+                queue.clear();
+                writing = true;
+            }
+
+            long bytes = 0;
+            int failed = 0;
+            for (Entry entry : batch) {
+                try {
+                    entry.write.accept(writer);
+                } catch (RuntimeException e) {
+                    failed++;
+                    LOGGER.warn("Unable to write Allure result: {}", e.toString());
+                }
+                bytes += entry.bytes;
+            }
+
+            synchronized (this) {
+                queuedBytes -= bytes;
+                writing = false;
+                written += batch.size() - failed;
+                failures += failed;
+                batches++;
+                notifyAll();
+            }
+        }
+    }
+
+    private static class Entry {
+        private final int bytes;
+        private final Consumer<AllureResultsWriter> write;
+
+        private Entry(int bytes, Consumer<AllureResultsWriter> write) {
+            this.bytes = bytes;
+            this.write = write;
+        }
+    }
+}
@@ -9,8 +9,10 @@ import org.testng.ITestNGMethod;
 import org.testng.ITestResult;
 import org.testng.SkipException;
 import org.testng.annotations.AfterMethod;
+import org.testng.annotations.AfterSuite;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.BeforeSuite;
+import org.testng.annotations.Listeners;
 import org.testng.xml.XmlSuite;
 import org.testng.xml.XmlTest;
 import utils.TestParameters;
@@ -22,6 +24,8 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.Comparator;
 
+// Tests are selected, then split into shards, and then ordered.
+@Listeners({ImpactSelector.class, ShardInterceptor.class, LongestFirstInterceptor.class, RerunPhase.class})
 public class BaseFrameworkTest {
     protected static final Logger LOGGER = LoggerFactory.getLogger("Test");
     protected String testName;
@@ -52,14 +56,30 @@ public class BaseFrameworkTest {
 
     @AfterMethod
     public void afterTest(ITestResult result, Method method) {
+        DurationStore.getInstance().record(result);
     }
 
+    @AfterSuite(alwaysRun = true)
+    public void saveDurations() {
+        DurationStore.getInstance().save();
+    }
+
+    /**
+     * Command line usage:
+     * -Dthreads=4             Run the specified number of tests in parallel
+     * -Dthreads=auto          Work out the number of threads from the resources of the host
+     */
     @BeforeSuite
     public void setupThreadCount(ITestContext context) {
+        if (RerunPhase.isRunning()) {
+            // The rerun has its own thread count.
+            return;
+        }
         XmlTest test = context.getCurrentXmlTest();
         XmlSuite suite = test.getSuite();
 
-        int threadsParam = Integer.parseInt(TestParameters.getParameter("threads", "0"));
+        String threads = TestParameters.getParameter("threads", "0");
+        int threadsParam = threads.equals("auto") ? getAutoThreadCount(context) : Integer.parseInt(threads);
         int suiteCount = suite.getThreadCount();
         int threadCount;
 
@@ -76,18 +96,33 @@ public class BaseFrameworkTest {
         suite.setDataProviderThreadCount(threadCount);
 
         // Workaround for IntelliJ apparently not setting Test thread count to the same as the suite.
+        // The lane for tests without a browser keeps its own thread count.
         if (suite.getName().equals("Default Suite")) {
-            test.setThreadCount(threadCount);
+            for (XmlTest suiteTest : suite.getTests()) {
+                if (!NonUiLane.isLane(suiteTest)) {
+                    suiteTest.setThreadCount(threadCount);
+                }
+            }
         }
 
         // Update thread count for invocation count tests without an overridden thread pool size.
         for (ITestNGMethod method : context.getAllTestMethods()) {
-            if (method.getInvocationCount() > 1 && method.getThreadPoolSize() == 0) {
+            if (method.getInvocationCount() > 1 && method.getThreadPoolSize() == 0 && !NonUiLane.isLane(method.getXmlTest())) {
                 method.setThreadPoolSize(threadCount);
             }
         }
     }
 
+    /**
+     * Returns the number of threads for "-Dthreads=auto". Tests without a browser are limited by the processors.
+     *
+     * @param context
+     * @return
+     */
+    protected int getAutoThreadCount(ITestContext context) {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     @BeforeSuite
     public void exportCleanup(ITestContext context) throws Exception {
         try {
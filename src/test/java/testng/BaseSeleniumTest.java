@@ -3,11 +3,28 @@ package testng;
 import Environment.Environment;
 import io.qameta.allure.Allure;
 import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.ITestContext;
 import org.testng.ITestResult;
 import org.testng.annotations.AfterMethod;
+import org.testng.annotations.AfterSuite;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeSuite;
 import pages.BaseSeleniumPage;
+import pages.ElementWait;
+import pages.FrameContext;
+import pages.binding.ElementIndex;
+import pages.binding.LocatorProfiler;
+import selenium.HostCapacity;
+import selenium.NetworkArchive;
+import selenium.PageActivityMonitor;
+import selenium.PageLoadTimings;
+import selenium.ProfileTemplate;
+import selenium.SessionStateCache;
+import selenium.StartupMetrics;
 import selenium.WebDriverFactory;
+import selenium.WebDriverPool;
+import selenium.WebDriverProvisioner;
+import utils.ScreenshotService;
 
 import java.lang.reflect.Method;
 
@@ -20,14 +37,44 @@ public class BaseSeleniumTest extends BaseFrameworkTest {
         return drivers.get();
     }
 
+    /**
+     * Also prepares the template browser profile and starts booting browsers in the background when requested.
+     * Command line usage:
+     * -Dprewarm               Keep one browser per test thread starting ahead of demand
+     * -Dprewarm=4             Keep the specified number of browsers starting ahead of demand
+     */
+    @Override
+    @BeforeSuite
+    public void setupThreadCount(ITestContext context) {
+        super.setupThreadCount(context);
+        WebDriverPool.getInstance().setThreadCount(context.getCurrentXmlTest().getSuite().getThreadCount());
+        ProfileTemplate.getInstance().prepare(WebDriverFactory.getDriverName(), Environment.getInstance().getUrl());
+
+        String prewarm = System.getProperty("prewarm");
+        if (prewarm != null) {
+            int count = prewarm.equals("") ? context.getCurrentXmlTest().getSuite().getThreadCount() : Integer.parseInt(prewarm);
+            WebDriverProvisioner.getInstance().start(WebDriverFactory.getDriverName(), Environment.getInstance().getUrl(), count);
+        }
+    }
+
+    /**
+     * Sizes the threads from the processors, available memory and measured browser memory, or the free grid slots.
+     */
+    @Override
+    protected int getAutoThreadCount(ITestContext context) {
+        return step("Size test threads", () -> {
+            int threads = HostCapacity.getInstance().getThreadCount(WebDriverFactory.getDriverName(), Environment.getInstance().getUrl());
+            Allure.attachment("Host capacity", HostCapacity.getInstance().getStatistics());
+            return threads;
+        });
+    }
+
     @Override
     @BeforeMethod
     public void beforeTest(Method method) {
         super.beforeTest(method);
         step("Open browser", (step) -> {
-            RemoteWebDriver driver = (RemoteWebDriver) WebDriverFactory.createWebDriver();
-            drivers.set(driver);
-            driver.get(Environment.getInstance().getUrl());
+            drivers.set(WebDriverPool.getInstance().acquire(Environment.getInstance().getUrl()));
         });
     }
 
@@ -38,6 +85,7 @@ public class BaseSeleniumTest extends BaseFrameworkTest {
 
         step("Close browser", () -> {
             RemoteWebDriver driver = getDriver();
+            drivers.remove();
             if (driver == null) {
                 Allure.attachment("Test Failure", "WebDriver was not available for screenshot.");
             } else {
@@ -46,11 +94,15 @@ public class BaseSeleniumTest extends BaseFrameworkTest {
                     page.takeScreenshot("Test Failed");
                 }
 
+                FrameContext.reset(driver);
+
                 // Keep the browser open if requested with "-Dkeep".
                 boolean keep = System.getProperty("keep") != null;
-                if (!keep) {
+                if (keep) {
+                    WebDriverPool.getInstance().detach(driver);
+                } else {
                     try {
-                        driver.quit();
+                        WebDriverPool.getInstance().release(driver, !result.isSuccess());
                     } catch (Exception e) {
                         step("Unable to close browser", () -> {
                             Allure.attachment("Exception", e.toString());
@@ -60,4 +112,39 @@ public class BaseSeleniumTest extends BaseFrameworkTest {
             }
         });
     }
+
+    @AfterSuite(alwaysRun = true)
+    public void closeBrowsers() {
+        step("Close browser pool", () -> {
+            WebDriverProvisioner.getInstance().shutdown();
+            Allure.attachment("Session pool", WebDriverPool.getInstance().getStatistics());
+            Allure.attachment("Pre-warmed sessions", WebDriverProvisioner.getInstance().getStatistics());
+            Allure.attachment("Page load timings", PageLoadTimings.getStatistics());
+            Allure.attachment("Element index", ElementIndex.getStatistics());
+            Allure.attachment("Page ready waits", PageActivityMonitor.getStatistics());
+            Allure.attachment("Element waits", ElementWait.getStatistics());
+            Allure.attachment("Frame switches", FrameContext.getStatistics());
+            Allure.attachment("Session state cache", SessionStateCache.getInstance().getStatistics());
+            if (HostCapacity.getInstance().isEnabled()) {
+                Allure.attachment("Host capacity", HostCapacity.getInstance().getStatistics());
+            }
+            ScreenshotService.getInstance().flush();
+            Allure.attachment("Screenshots", ScreenshotService.getInstance().getStatistics());
+            Allure.addAttachment("Driver startup", "application/json", StartupMetrics.writeReport(), ".json");
+            if (LocatorProfiler.isEnabled()) {
+                LocatorProfiler.writeReport();
+                LocatorProfiler.getReports().forEach((page, report) ->
+                        Allure.addAttachment("Locators " + page.substring(page.lastIndexOf('.') + 1), "application/json", report, ".json"));
+            }
+            if (NetworkArchive.getInstance().isEnabled()) {
+                NetworkArchive.getInstance().save();
+                Allure.attachment("Network archive", NetworkArchive.getInstance().getStatistics());
+            }
+            // Failed tests run again after the suite, with the warm sessions of the pool.
+            if (!RerunPhase.isPending()) {
+                WebDriverPool.getInstance().shutdown();
+                ProfileTemplate.getInstance().cleanup();
+            }
+        });
+    }
 }
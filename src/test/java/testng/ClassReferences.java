@@ -0,0 +1,228 @@
+package testng;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Graph of which classes use which other classes, read from the constant pools of compiled classes.
+ * Nested classes count as part of their top level class, because that is the source file that changes.
+ * Generated page binders ({@code <Page>_Binder}), which {@link pages.binding.PageBinders} loads by name, count as
+ * used by their page. Other classes that are only loaded by name are not seen, and neither are constants that the
+ * compiler copies into the classes that use them. Classes that declare such constants are recorded instead
+ * ({@link #declaresConstants(String)}).
+ */
+public class ClassReferences {
+    private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([\\w/$]+)[;<]");
+
+    // Top level class names mapped to the top level classes they use.
+    private final Map<String, Set<String>> references = new HashMap<>();
+    // Top level classes that declare, or have a nested class that declares, a constant the compiler inlines.
+    private final Set<String> constantClasses = new HashSet<>();
+
+    /**
+     * Reads all class files below the directories. Directories that don't exist are skipped.
+     *
+     * @param roots Class output directories, e.g. target/classes.
+     * @throws IOException
+     */
+    public ClassReferences(List<Path> roots) throws IOException {
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+            List<Path> files;
+            try (Stream<Path> paths = Files.walk(root)) {
+                files = paths.filter(path -> path.toString().endsWith(".class")).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String name = toTopLevel(root.relativize(file).toString().replace('\\', '/').replaceAll("\\.class$", ""));
+                Set<String> used = references.computeIfAbsent(name, key -> new HashSet<>());
+                try (InputStream input = Files.newInputStream(file)) {
+                    if (readClass(input, used)) {
+                        constantClasses.add(name);
+                    }
+                }
+                used.remove(name);
+            }
+        }
+        // Only classes of this project matter, not Selenium or the JDK.
+        references.values().forEach(used -> used.retainAll(references.keySet()));
+        for (Map.Entry<String, Set<String>> entry : references.entrySet()) {
+            String binder = entry.getKey() + "_Binder";
+            if (references.containsKey(binder)) {
+                entry.getValue().add(binder);
+            }
+        }
+    }
+
+    public boolean contains(String className) {
+        return references.containsKey(className);
+    }
+
+    /**
+     * Whether a class declares a constant, e.g. a static final String with a literal value. Classes using the
+     * constant get a copy of the value instead of a reference to the class.
+     *
+     * @param className Top level class name.
+     * @return
+     */
+    public boolean declaresConstants(String className) {
+        return constantClasses.contains(className);
+    }
+
+    /**
+     * Returns the classes that use any of the classes, directly or through other classes, including the classes themselves.
+     *
+     * @param classNames Top level class names, e.g. "pages.CheckOutPage".
+     * @return
+     */
+    public Set<String> getUsers(Set<String> classNames) {
+        Map<String, Set<String>> users = new HashMap<>();
+        references.forEach((user, used) -> used.forEach(name -> users.computeIfAbsent(name, key -> new HashSet<>()).add(user)));
+
+        Set<String> affected = new HashSet<>(classNames);
+        Deque<String> pending = new ArrayDeque<>(classNames);
+        while (!pending.isEmpty()) {
+            for (String user : users.getOrDefault(pending.pop(), Set.of())) {
+                if (affected.add(user)) {
+                    pending.push(user);
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Returns the top level class name of a class, e.g. "pages.BasePage" for "pages/BasePage$1".
+     *
+     * @param name A binary or internal class name.
+     * @return
+     */
+    public static String toTopLevel(String name) {
+        String dotted = name.replace('/', '.');
+        int nested = dotted.indexOf('$');
+        return nested < 0 ? dotted : dotted.substring(0, nested);
+    }
+
+    /**
+     * Collects the classes in the constant pool of a class file. That covers super types, field and method types,
+     * annotations, and every class whose members are used.
+     */
+    static Set<String> readReferences(InputStream stream) throws IOException {
+        Set<String> classes = new HashSet<>();
+        readClass(stream, classes);
+        return classes;
+    }
+
+    /**
+     * Adds the classes in the constant pool of a class file to the set.
+     *
+     * @return Whether the class has a field with a ConstantValue attribute, i.e. a constant that the compiler inlines.
+     */
+    private static boolean readClass(InputStream stream, Set<String> classes) throws IOException {
+        DataInputStream input = new DataInputStream(stream);
+        if (input.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        input.readUnsignedShort();
+        input.readUnsignedShort();
+
+        int count = input.readUnsignedShort();
+        String[] utf8 = new String[count];
+        List<Integer> classIndexes = new ArrayList<>();
+        for (int i = 1; i < count; i++) {
+            int tag = input.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    utf8[i] = input.readUTF();
+                    break;
+                case 7:
+                    classIndexes.add(input.readUnsignedShort());
+                    break;
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    input.readUnsignedShort();
+                    break;
+                case 15:
+                    input.readUnsignedByte();
+                    input.readUnsignedShort();
+                    break;
+                case 3:
+                case 4:
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    input.readInt();
+                    break;
+                case 5:
+                case 6:
+                    // Longs and doubles take two constant pool entries.
+                    input.readLong();
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        for (int index : classIndexes) {
+            String name = utf8[index];
+            if (name.startsWith("[")) {
+                addDescriptorClasses(name, classes);
+            } else {
+                classes.add(toTopLevel(name));
+            }
+        }
+        for (String value : utf8) {
+            if (value != null && value.indexOf(';') > 0) {
+                addDescriptorClasses(value, classes);
+            }
+        }
+
+        // Access flags, this class and super class, then the interfaces.
+        input.readUnsignedShort();
+        input.readUnsignedShort();
+        input.readUnsignedShort();
+        input.readFully(new byte[2 * input.readUnsignedShort()]);
+        boolean constants = false;
+        int fields = input.readUnsignedShort();
+        for (int i = 0; i < fields; i++) {
+            // Access flags, name and descriptor.
+            input.readFully(new byte[6]);
+            int attributes = input.readUnsignedShort();
+            for (int j = 0; j < attributes; j++) {
+                String name = utf8[input.readUnsignedShort()];
+                input.readFully(new byte[input.readInt()]);
+                constants |= "ConstantValue".equals(name);
+            }
+        }
+        return constants;
+    }
+
+    private static void addDescriptorClasses(String descriptor, Set<String> classes) {
+        Matcher matcher = DESCRIPTOR_CLASS.matcher(descriptor);
+        while (matcher.find()) {
+            classes.add(toTopLevel(matcher.group(1)));
+        }
+    }
+}
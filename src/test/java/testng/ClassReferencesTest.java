@@ -0,0 +1,141 @@
+package testng;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Reads the references of small sample classes, compiled into a temporary directory before the tests.
+ */
+public class ClassReferencesTest {
+    private static final Map<String, String> SOURCES = new LinkedHashMap<>();
+
+    static {
+        SOURCES.put("sample/Util.java", "package sample; public class Util { public static long now() { return 0; } }");
+        SOURCES.put("sample/Base.java", "package sample; public class Base { protected String name = \"base\"; }");
+        // Page uses Util only in a lambda and in its nested class, and has long and double constants.
+        SOURCES.put("sample/Page.java", "package sample; public class Page extends Base {"
+                + " static long big = 5_000_000_000L; static double ratio = 0.25;"
+                + " Runnable refresh = () -> Util.now();"
+                + " static class Row { long time() { return Util.now() + big; } } }");
+        SOURCES.put("sample/PageTest.java", "package sample; public class PageTest { Page[] pages = new Page[1]; }");
+        SOURCES.put("sample/Other.java", "package sample; public class Other { java.util.List<String> names; }");
+        SOURCES.put("sample/Urls.java", "package sample; public class Urls { public static final String HOME = \"/home\"; }");
+        // Only Page_Binder uses Finder, and nothing uses Page_Binder directly, like a generated page binder.
+        SOURCES.put("sample/Finder.java", "package sample; public class Finder { public static Object find() { return null; } }");
+        SOURCES.put("sample/Page_Binder.java", "package sample; public class Page_Binder { Object bind() { return Finder.find(); } }");
+    }
+
+    private Path root;
+    private ClassReferences references;
+
+    @BeforeClass
+    public void compileSamples() throws IOException {
+        root = Files.createTempDirectory("class-references");
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-d");
+        arguments.add(root.toString());
+        for (Map.Entry<String, String> source : SOURCES.entrySet()) {
+            Path file = root.resolve("src").resolve(source.getKey());
+            Files.createDirectories(file.getParent());
+            Files.write(file, source.getValue().getBytes(StandardCharsets.UTF_8));
+            arguments.add(file.toString());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assert.assertNotNull(compiler, "Tests need a JDK");
+        Assert.assertEquals(compiler.run(null, null, null, arguments.toArray(new String[0])), 0, "Compiling the samples");
+        references = new ClassReferences(Collections.singletonList(root));
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void deleteSamples() throws IOException {
+        if (root == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void readsConstantPool() throws IOException {
+        Set<String> used;
+        try (InputStream input = ClassReferences.class.getResourceAsStream("ClassReferences.class")) {
+            used = ClassReferences.readReferences(input);
+        }
+        Assert.assertTrue(used.contains("java.io.DataInputStream"), used.toString());
+        Assert.assertTrue(used.contains("java.util.regex.Pattern"), used.toString());
+        Assert.assertTrue(used.contains("testng.ClassReferences"), used.toString());
+    }
+
+    @Test
+    public void readsClassesAfterLongAndDoubleConstants() throws IOException {
+        Set<String> used;
+        try (InputStream input = Files.newInputStream(root.resolve("sample/Page.class"))) {
+            used = ClassReferences.readReferences(input);
+        }
+        Assert.assertTrue(used.contains("sample.Base"), used.toString());
+        Assert.assertTrue(used.contains("sample.Util"), used.toString());
+    }
+
+    @Test
+    public void rejectsOtherFiles() {
+        Assert.assertThrows(IOException.class, () -> ClassReferences.readReferences(
+                new ByteArrayInputStream("not a class".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void mapsNestedClassesToTopLevel() {
+        Assert.assertEquals(ClassReferences.toTopLevel("pages/BasePage$1"), "pages.BasePage");
+        Assert.assertEquals(ClassReferences.toTopLevel("sample.Page$Row$Cell"), "sample.Page");
+        Assert.assertEquals(ClassReferences.toTopLevel("sample.Page"), "sample.Page");
+
+        Assert.assertTrue(references.contains("sample.Page"));
+        Assert.assertFalse(references.contains("sample.Page$Row"));
+    }
+
+    @Test
+    public void findsTransitiveUsers() {
+        Assert.assertEquals(references.getUsers(Collections.singleton("sample.Base")),
+                new HashSet<>(List.of("sample.Base", "sample.Page", "sample.PageTest")));
+        // Page uses Util only through its nested class and a lambda.
+        Assert.assertEquals(references.getUsers(Collections.singleton("sample.Util")),
+                new HashSet<>(List.of("sample.Util", "sample.Page", "sample.PageTest")));
+        Assert.assertEquals(references.getUsers(Collections.singleton("sample.Other")), Collections.singleton("sample.Other"));
+    }
+
+    @Test
+    public void pageUsesItsBinder() {
+        Assert.assertEquals(references.getUsers(Collections.singleton("sample.Finder")),
+                new HashSet<>(List.of("sample.Finder", "sample.Page_Binder", "sample.Page", "sample.PageTest")));
+    }
+
+    @Test
+    public void findsClassesWithConstants() {
+        Assert.assertTrue(references.declaresConstants("sample.Urls"));
+        // Page has long and double fields, but they aren't final.
+        Assert.assertFalse(references.declaresConstants("sample.Page"));
+        Assert.assertFalse(references.declaresConstants("sample.Util"));
+    }
+}
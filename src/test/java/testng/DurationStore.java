@@ -0,0 +1,117 @@
+package testng;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestResult;
+import utils.TestParameters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the duration of each test method across runs, in a file outside the build directory so it survives a clean.
+ * Durations of passed tests are added up per method during the run, and merged into the stored value at the end
+ * as a moving average, so one slow run doesn't change the schedule much.
+ * The store is local to the machine, so it only orders tests ({@link LongestFirstInterceptor}) and isn't used to
+ * split them into shards.
+ * Command line usage:
+ * -DdurationStore=test-durations.json     Location of the store
+ */
+public class DurationStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger("DurationStore");
+    private static final DurationStore instance = new DurationStore();
+    // Weight of the current run in the moving average.
+    private static final double CURRENT_RUN_WEIGHT = 0.3;
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Path file;
+    private final Map<String, Long> current = new ConcurrentHashMap<>();
+
+    private DurationStore() {
+        file = Paths.get(TestParameters.getParameter("durationStore", "test-durations.json"));
+    }
+
+    public static DurationStore getInstance() {
+        return instance;
+    }
+
+    /**
+     * Adds the duration of a passed test to the current run.
+     *
+     * @param result
+     */
+    public void record(ITestResult result) {
+        if (result.getStatus() != ITestResult.SUCCESS || result.getEndMillis() < result.getStartMillis()) {
+            return;
+        }
+        current.merge(result.getMethod().getQualifiedName(), result.getEndMillis() - result.getStartMillis(), Long::sum);
+    }
+
+    /**
+     * Returns the stored durations.
+     *
+     * @return Method names mapped to milliseconds.
+     */
+    public Map<String, Long> load() {
+        if (!Files.isRegularFile(file)) {
+            return new TreeMap<>();
+        }
+        try {
+            return MAPPER.readValue(file.toFile(), new TypeReference<TreeMap<String, Long>>() {
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read duration store {}: {}", file, e.toString());
+            return new TreeMap<>();
+        }
+    }
+
+    /**
+     * Merges the durations of the current run into the store.
+     * Forks of the same build save at the same time, so the store is read and written under a lock file, and replaced
+     * in one step so readers never see half a file.
+     */
+    public synchronized void save() {
+        if (current.isEmpty()) {
+            return;
+        }
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        try {
+            if (file.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+            }
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    Map<String, Long> durations = load();
+                    current.forEach((name, millis) -> durations.merge(name, millis,
+                            (stored, latest) -> Math.round(stored * (1 - CURRENT_RUN_WEIGHT) + latest * CURRENT_RUN_WEIGHT)));
+                    Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+                    try {
+                        MAPPER.writeValue(temporary.toFile(), durations);
+                        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } finally {
+                        Files.deleteIfExists(temporary);
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+            current.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to save duration store " + file, e);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package testng;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IExecutorServiceFactory;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+import org.testng.ITestNGListener;
+import org.testng.ITestNGMethod;
+import utils.TestParameters;
+
+import javax.annotation.processing.Processor;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs only the tests affected by the changes since a git revision, plus a safety set that always runs.
+ * A test is affected when its class uses a changed class, directly or through other classes, e.g. a test using
+ * CheckOutPage is affected by a change to BasePage. Uses are read from the compiled classes ({@link ClassReferences}).
+ * Changes to the build file, or to anything under src that isn't Java source, e.g. environment files, run all tests.
+ * So do changes to classes that change how every test runs, but that tests don't use directly: TestNG listeners,
+ * e.g. {@link NonUiLane}, the TestNG thread pool factory, annotation processors, e.g. PageBinderProcessor, and
+ * classes named in META-INF/services.
+ * The compiled classes don't show uses of constants, because the compiler copies them, so when a changed class
+ * declares constants, every class whose source mentions its name counts as changed too. Page objects use their
+ * generated binders, which are loaded by name ({@link ClassReferences}). Other classes that are only loaded by
+ * name, e.g. through reflection, are not seen.
+ * When git or the compiled classes are not available all tests run.
+ * Command line usage:
+ * -DimpactBase=origin/main                             Run the tests affected by the changes since this revision
+ * -DimpactAlways=tests.LoginTest,group:smoke           Classes, methods and groups that always run
+ */
+public class ImpactSelector implements IMethodInterceptor {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ImpactSelector");
+    private static final long GIT_TIMEOUT_SECONDS = 60;
+    private static final String[] SOURCE_ROOTS = {"src/main/java/", "src/test/java/"};
+    private static Set<String> affectedClasses;
+    private static boolean resolved;
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        String base = TestParameters.getParameter("impactBase", "");
+        if (base.equals("") || RerunPhase.isRunning()) {
+            return methods;
+        }
+        Set<String> affected = getAffectedClasses(base);
+        if (affected == null) {
+            return methods;
+        }
+
+        List<String> always = Arrays.stream(TestParameters.getParameter("impactAlways", "").split(","))
+                .map(String::trim).filter(name -> !name.isEmpty()).collect(Collectors.toList());
+        List<IMethodInstance> selected = new ArrayList<>();
+        for (IMethodInstance method : methods) {
+            ITestNGMethod testMethod = method.getMethod();
+            if (affected.contains(ClassReferences.toTopLevel(testMethod.getRealClass().getName())) || isAlways(testMethod, always)) {
+                selected.add(method);
+            }
+        }
+        LOGGER.info("Running {} of {} tests affected by the changes since {}", selected.size(), methods.size(), base);
+        return selected;
+    }
+
+    private static boolean isAlways(ITestNGMethod method, List<String> always) {
+        for (String name : always) {
+            if (name.startsWith("group:")) {
+                if (Arrays.asList(method.getGroups()).contains(name.substring("group:".length()))) {
+                    return true;
+                }
+            } else if (name.equals(method.getRealClass().getName()) || name.equals(method.getQualifiedName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Works out the affected classes once per run, because the interceptor is called for every test tag of the suite.
+     *
+     * @param base
+     * @return The affected classes, or null when all tests must run.
+     */
+    private static synchronized Set<String> getAffectedClasses(String base) {
+        if (resolved) {
+            return affectedClasses;
+        }
+        resolved = true;
+        try {
+            List<String> changedFiles = new ArrayList<>(git("diff", "--name-only", "--relative", base));
+            changedFiles.addAll(git("ls-files", "--others", "--exclude-standard"));
+
+            Set<String> changedClasses = new HashSet<>();
+            for (String file : changedFiles) {
+                String className = toClassName(file);
+                if (className != null) {
+                    changedClasses.add(className);
+                } else if (file.equals("pom.xml") || file.startsWith("src/")) {
+                    LOGGER.info("{} changed, running all tests", file);
+                    return null;
+                }
+            }
+
+            List<Path> roots = Arrays.asList(Paths.get("target", "classes"), Paths.get("target", "test-classes"));
+            ClassReferences references = new ClassReferences(roots);
+            Set<String> services = getServiceClasses(roots);
+            for (String className : changedClasses) {
+                if (services.contains(className) || isGlobal(load(className))) {
+                    LOGGER.info("{} changed, which affects every test, running all tests", className);
+                    return null;
+                }
+            }
+            if (!changedClasses.isEmpty() && changedClasses.stream().noneMatch(references::contains)) {
+                LOGGER.warn("None of the changed classes are compiled, running all tests: {}", changedClasses);
+                return null;
+            }
+            Set<String> constantClasses = changedClasses.stream().filter(references::declaresConstants).collect(Collectors.toSet());
+            if (!constantClasses.isEmpty()) {
+                Set<String> sourceUsers = getSourceUsers(constantClasses);
+                LOGGER.info("Classes mentioning the constants of {}: {}", constantClasses, sourceUsers);
+                changedClasses.addAll(sourceUsers);
+            }
+            affectedClasses = references.getUsers(changedClasses);
+            LOGGER.info("Changed classes since {}: {}", base, changedClasses);
+            return affectedClasses;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to work out the changes since {}, running all tests: {}", base, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Whether a class or one of its nested classes is a TestNG listener or thread pool factory, or an annotation processor.
+     */
+    private static boolean isGlobal(Class<?> type) {
+        if (type == null) {
+            return false;
+        }
+        if (ITestNGListener.class.isAssignableFrom(type) || IExecutorServiceFactory.class.isAssignableFrom(type)
+                || Processor.class.isAssignableFrom(type)) {
+            return true;
+        }
+        for (Class<?> nested : type.getDeclaredClasses()) {
+            if (isGlobal(nested)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Class<?> load(String className) {
+        try {
+            return Class.forName(className, false, Thread.currentThread().getContextClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            // Deleted, or not compiled.
+            return null;
+        }
+    }
+
+    /**
+     * Returns the top level classes named in the META-INF/services files of the class directories.
+     */
+    private static Set<String> getServiceClasses(List<Path> roots) throws IOException {
+        Set<String> classes = new HashSet<>();
+        for (Path root : roots) {
+            Path services = root.resolve("META-INF").resolve("services");
+            if (!Files.isDirectory(services)) {
+                continue;
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(services)) {
+                for (Path file : files) {
+                    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                        String name = line.replaceAll("#.*", "").trim();
+                        if (!name.isEmpty()) {
+                            classes.add(ClassReferences.toTopLevel(name));
+                        }
+                    }
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Returns the classes whose source mentions any of the classes by their simple name, which covers qualified
+     * uses of their constants as well as static imports.
+     */
+    private static Set<String> getSourceUsers(Set<String> classNames) throws IOException {
+        Pattern names = Pattern.compile(classNames.stream()
+                .map(name -> Pattern.quote(name.substring(name.lastIndexOf('.') + 1)))
+                .collect(Collectors.joining("|", "\\b(", ")\\b")));
+        Set<String> users = new HashSet<>();
+        for (String root : SOURCE_ROOTS) {
+            Path directory = Paths.get(root);
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            List<Path> files;
+            try (Stream<Path> paths = Files.walk(directory)) {
+                files = paths.filter(path -> path.toString().endsWith(".java")).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                if (names.matcher(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).find()) {
+                    users.add(toClassName(root + directory.relativize(file).toString().replace('\\', '/')));
+                }
+            }
+        }
+        return users;
+    }
+
+    private static String toClassName(String file) {
+        for (String root : SOURCE_ROOTS) {
+            if (file.startsWith(root) && file.endsWith(".java")) {
+                return file.substring(root.length(), file.length() - ".java".length()).replace('/', '.');
+            }
+        }
+        return null;
+    }
+
+    private static List<String> git(String... arguments) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(arguments));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        try {
+            if (!process.waitFor(GIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                throw new IOException("git " + String.join(" ", arguments) + " timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running git", e);
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException("git " + String.join(" ", arguments) + " failed: " + String.join("\n", lines));
+        }
+        return lines;
+    }
+}
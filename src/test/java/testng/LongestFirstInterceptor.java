@@ -0,0 +1,44 @@
+package testng;
+
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+import utils.TestParameters;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts the longest tests first, so a long test doesn't start last and keep one thread busy after the others
+ * are done. Durations come from {@link TestDurations}.
+ * Priorities still come first, and a class with dependencies between its methods moves as one unit with its methods
+ * in their original order. Tests with the same duration, e.g. all of them when there is no history, keep their order.
+ * Command line usage:
+ * -Dschedule=declared     Keep the declaration order
+ */
+public class LongestFirstInterceptor implements IMethodInterceptor {
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        if (TestParameters.getParameter("schedule", "longest").equals("declared") || methods.size() < 2) {
+            return methods;
+        }
+
+        Map<String, Long> weights = TestDurations.getUnitWeights(methods, TestDurations.load());
+        Map<IMethodInstance, Integer> positions = new HashMap<>();
+        Map<String, Integer> unitPositions = new HashMap<>();
+        for (int i = 0; i < methods.size(); i++) {
+            positions.put(methods.get(i), i);
+            unitPositions.putIfAbsent(TestDurations.getUnit(methods.get(i).getMethod()), i);
+        }
+
+        List<IMethodInstance> ordered = new ArrayList<>(methods);
+        ordered.sort(Comparator.comparingInt((IMethodInstance method) -> method.getMethod().getPriority())
+                .thenComparing(method -> weights.get(TestDurations.getUnit(method.getMethod())), Comparator.reverseOrder())
+                .thenComparing(method -> unitPositions.get(TestDurations.getUnit(method.getMethod())))
+                .thenComparing(positions::get));
+        return ordered;
+    }
+}
@@ -0,0 +1,118 @@
+package testng;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IAlterSuiteListener;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+import utils.TestParameters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the test classes that don't use a browser, e.g. database and API checks, in a test of their own with many
+ * more threads than the browser tests. The browser tests keep the thread count of -Dthreads.
+ * A class uses a browser when it extends {@link BaseSeleniumTest}. Classes of a test with packages instead of classes
+ * are not moved.
+ * With {@link VirtualThreadExecutorFactory}, e.g. in the java21 Maven profile, the lane runs on virtual threads.
+ * Registered through META-INF/services, because the suite is altered before the @Listeners annotations are read.
+ * Command line usage:
+ * -DnonUiThreads=64        Number of threads for tests without a browser, by default 8 per processor
+ * -DnonUiLane=off          Run tests without a browser together with the browser tests
+ */
+public class NonUiLane implements IAlterSuiteListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger("NonUiLane");
+    private static final String LANE_PARAMETER = "lane";
+    private static final String LANE = "no-browser";
+    // TestNG names the threads of a test "TestNG-test-<test name>-<number>".
+    private static final Pattern TESTNG_THREAD = Pattern.compile("TestNG-test-(.*)-\\d+");
+    private static final Set<String> laneNames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether a test is the lane for tests without a browser, e.g. so its thread count isn't overwritten.
+     *
+     * @param test
+     * @return
+     */
+    public static boolean isLane(XmlTest test) {
+        return LANE.equals(test.getLocalParameters().get(LANE_PARAMETER));
+    }
+
+    /**
+     * Whether a TestNG thread belongs to a lane, going by the test name in the thread name. Test names are unique
+     * within a suite, so only the lane matches.
+     *
+     * @param threadName
+     * @return
+     */
+    public static boolean isLaneThread(String threadName) {
+        Matcher matcher = TESTNG_THREAD.matcher(threadName);
+        return matcher.matches() && laneNames.contains(matcher.group(1));
+    }
+
+    @Override
+    public void alter(List<XmlSuite> suites) {
+        if (TestParameters.getParameter("nonUiLane", "on").equals("off") || RerunPhase.isRunning()) {
+            return;
+        }
+        int threads = Integer.parseInt(TestParameters.getParameter("nonUiThreads",
+                String.valueOf(8 * Runtime.getRuntime().availableProcessors())));
+        for (XmlSuite suite : suites) {
+            for (XmlTest test : new ArrayList<>(suite.getTests())) {
+                split(suite, test, threads);
+            }
+        }
+    }
+
+    private static void split(XmlSuite suite, XmlTest test, int threads) {
+        List<XmlClass> browserClasses = new ArrayList<>();
+        List<XmlClass> otherClasses = new ArrayList<>();
+        for (XmlClass xmlClass : test.getXmlClasses()) {
+            Class<?> testClass = load(xmlClass);
+            if (testClass != null && !BaseSeleniumTest.class.isAssignableFrom(testClass)) {
+                otherClasses.add(xmlClass);
+            } else {
+                browserClasses.add(xmlClass);
+            }
+        }
+        if (otherClasses.isEmpty()) {
+            return;
+        }
+
+        XmlTest lane;
+        if (browserClasses.isEmpty()) {
+            lane = test;
+        } else {
+            test.setXmlClasses(browserClasses);
+            lane = new XmlTest(suite);
+            lane.setName(test.getName() + " (no browser)");
+            lane.setParameters(new HashMap<>(test.getLocalParameters()));
+            lane.setIncludedGroups(test.getIncludedGroups());
+            lane.setExcludedGroups(test.getExcludedGroups());
+            lane.setPreserveOrder(test.getPreserveOrder());
+            lane.setXmlClasses(otherClasses);
+        }
+        lane.addParameter(LANE_PARAMETER, LANE);
+        lane.setParallel(XmlSuite.ParallelMode.METHODS);
+        lane.setThreadCount(threads);
+        laneNames.add(lane.getName());
+        LOGGER.info("Running {} classes without a browser in '{}' with {} threads", otherClasses.size(), lane.getName(), threads);
+    }
+
+    private static Class<?> load(XmlClass xmlClass) {
+        try {
+            Class<?> testClass = xmlClass.getSupportClass();
+            return testClass != null ? testClass : Class.forName(xmlClass.getName(), false, Thread.currentThread().getContextClassLoader());
+        } catch (ClassNotFoundException | RuntimeException e) {
+            // Left with the browser tests, where TestNG reports the problem.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package testng;
+
+import io.qameta.allure.testng.AllureTestNg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ISuiteResult;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.TestRunner;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlInclude;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+import utils.TestParameters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Runs failed tests again after the suite, instead of failing the build on the first failure.
+ * A failure is reported as skipped and the test is run again at the end, at low parallelism and with the warm
+ * browser sessions of the pool. A class with dependencies between its methods is run again as a whole.
+ * The rerun has the same Allure history id, so the report shows the first attempt as a retry of the rerun.
+ * Tests that don't pass again are reported as failed after all, with the rerun failure, to the listeners of the suite,
+ * e.g. Surefire, so they fail the build.
+ * Command line usage:
+ * -Drerun                 Run failed tests again after the suite
+ * -DrerunThreads=1        Number of threads for the rerun
+ * -DrerunMax=10           Maximum number of failures to run again, later failures fail right away
+ */
+public class RerunPhase implements IInvokedMethodListener, ISuiteListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger("RerunPhase");
+    private static final boolean enabled = System.getProperty("rerun") != null;
+    private static final int MAX_RERUNS = Integer.parseInt(TestParameters.getParameter("rerunMax", "10"));
+    // Class names mapped to the methods to run again.
+    private static final Map<String, Set<String>> deferredMethods = new TreeMap<>();
+    // Classes with dependencies between their methods, which run again as a whole.
+    private static final Set<String> deferredClasses = new TreeSet<>();
+    // Method names mapped to the results that were reported as skipped.
+    private static final Map<String, List<ITestResult>> deferredResults = new HashMap<>();
+    private static volatile boolean running;
+    private static int deferredCount;
+
+    /**
+     * Whether failed tests are waiting to run again, e.g. so the browser pool is kept for them.
+     *
+     * @return
+     */
+    public static boolean isPending() {
+        synchronized (deferredMethods) {
+            return !running && (!deferredMethods.isEmpty() || !deferredClasses.isEmpty());
+        }
+    }
+
+    /**
+     * Whether the rerun is in progress, e.g. so the tests aren't selected or sharded again.
+     *
+     * @return
+     */
+    public static boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void afterInvocation(IInvokedMethod method, ITestResult result) {
+        if (!enabled || running || !method.isTestMethod() || result.getStatus() != ITestResult.FAILURE) {
+            return;
+        }
+        synchronized (deferredMethods) {
+            if (deferredCount >= MAX_RERUNS) {
+                return;
+            }
+            deferredCount++;
+            ITestNGMethod testMethod = result.getMethod();
+            String className = testMethod.getRealClass().getName();
+            if (TestDurations.getUnit(testMethod).equals(className)) {
+                deferredClasses.add(className);
+            } else {
+                deferredMethods.computeIfAbsent(className, name -> new TreeSet<>()).add(testMethod.getMethodName());
+            }
+            deferredResults.computeIfAbsent(testMethod.getQualifiedName(), name -> new ArrayList<>()).add(result);
+        }
+        // Reported as skipped, so the failure only counts when the rerun fails too.
+        result.setStatus(ITestResult.SKIP);
+        LOGGER.info("{} failed, it will run again after the suite", result.getMethod().getQualifiedName());
+    }
+
+    @Override
+    public void onFinish(ISuite suite) {
+        if (!isPending()) {
+            return;
+        }
+
+        XmlSuite rerunSuite = new XmlSuite();
+        rerunSuite.setName(suite.getName() + " rerun");
+        rerunSuite.setParameters(suite.getXmlSuite().getParameters());
+        int threads = Integer.parseInt(TestParameters.getParameter("rerunThreads", "1"));
+        rerunSuite.setParallel(threads > 1 ? XmlSuite.ParallelMode.METHODS : XmlSuite.ParallelMode.NONE);
+        rerunSuite.setThreadCount(threads);
+        XmlTest test = new XmlTest(rerunSuite);
+        test.setName("Rerun");
+        List<XmlClass> classes = new ArrayList<>();
+        Map<String, List<ITestResult>> originals;
+        synchronized (deferredMethods) {
+            deferredClasses.forEach(className -> classes.add(new XmlClass(className)));
+            deferredMethods.forEach((className, methods) -> {
+                if (!deferredClasses.contains(className)) {
+                    XmlClass xmlClass = new XmlClass(className);
+                    xmlClass.setIncludedMethods(methods.stream().map(XmlInclude::new).collect(Collectors.toList()));
+                    classes.add(xmlClass);
+                }
+            });
+            originals = new TreeMap<>(deferredResults);
+            deferredClasses.clear();
+            deferredMethods.clear();
+            deferredResults.clear();
+        }
+        test.setXmlClasses(classes);
+
+        TestListenerAdapter results = new TestListenerAdapter();
+        TestNG testNG = new TestNG();
+        testNG.setUseDefaultListeners(false);
+        testNG.setXmlSuites(Collections.singletonList(rerunSuite));
+        testNG.addListener(results);
+        running = true;
+        try {
+            testNG.run();
+        } finally {
+            running = false;
+        }
+
+        Set<String> passed = results.getPassedTests().stream()
+                .map(result -> result.getMethod().getQualifiedName()).collect(Collectors.toSet());
+        Map<String, ITestResult> failures = new TreeMap<>();
+        results.getFailedTests().forEach(result -> failures.putIfAbsent(result.getMethod().getQualifiedName(), result));
+        results.getConfigurationFailures().forEach(result -> failures.putIfAbsent(result.getMethod().getQualifiedName(), result));
+
+        List<String> failed = new ArrayList<>();
+        originals.forEach((name, originalResults) -> {
+            // Tests skipped in the rerun, e.g. after a configuration failure, didn't pass either.
+            if (!passed.contains(name)) {
+                ITestResult failure = failures.remove(name);
+                originalResults.forEach(original -> reportFailure(suite, original, failure));
+                failed.add(name);
+            }
+        });
+        // Methods of a class that ran again as a whole, which passed the first time.
+        failures.forEach((name, failure) -> {
+            reportFailure(suite, failure, null);
+            failed.add(name);
+        });
+        LOGGER.info("Rerun: {} passed, {} failed", results.getPassedTests().size(), failed.size());
+        if (!failed.isEmpty()) {
+            LOGGER.error("Tests failed again in the rerun: {}", String.join(", ", failed));
+        }
+    }
+
+    /**
+     * Reports a test as failed after all. The result moves from the skipped to the failed tests of its test, which
+     * the TestNG reports read, and the test listeners of the suite are told, e.g. Surefire, which fails the build.
+     * The Allure listener isn't told, because the rerun is already in the report.
+     *
+     * @param suite   The suite that ran the test the first time.
+     * @param result  The result to report, the first attempt or a result of the rerun.
+     * @param failure The rerun failure, or null to keep the failure of the result.
+     */
+    private static void reportFailure(ISuite suite, ITestResult result, ITestResult failure) {
+        if (failure != null && failure.getThrowable() != null) {
+            result.setThrowable(failure.getThrowable());
+        }
+        result.setStatus(ITestResult.FAILURE);
+
+        List<ITestContext> contexts = suite.getResults().values().stream()
+                .map(ISuiteResult::getTestContext).collect(Collectors.toList());
+        ITestContext context = result.getTestContext();
+        if (!contexts.contains(context)) {
+            // A result of the rerun belongs to the first test of the suite.
+            context = contexts.isEmpty() ? null : contexts.get(0);
+        }
+        if (context == null) {
+            return;
+        }
+        context.getSkippedTests().removeResult(result);
+        context.getFailedTests().addResult(result);
+        if (context instanceof TestRunner) {
+            for (ITestListener listener : ((TestRunner) context).getTestListeners()) {
+                if (listener instanceof AllureTestNg) {
+                    continue;
+                }
+                try {
+                    listener.onTestFailure(result);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Unable to report the rerun failure of {} to {}: {}",
+                            result.getMethod().getQualifiedName(), listener.getClass().getName(), e.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package testng;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+import utils.TestParameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs one shard of the tests, so the suite can be split across JVMs or build agents.
+ * Tests are spread over the shards by their duration in earlier runs ({@link TestDurations}), longest first, each to
+ * the shard with the least work so far. Every shard works out the same assignment from the same history, so the
+ * shards don't need to coordinate. That's why only the shared -DtestHistory is used, not the local {@link DurationStore},
+ * which differs per agent. Without history every test counts the same, and tests are dealt out by name.
+ * Methods of a class with dependencies between its methods stay in the same shard.
+ * Command line usage:
+ * -Dshard=2/4             Run the second of four shards
+ */
+public class ShardInterceptor implements IMethodInterceptor {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ShardInterceptor");
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        String shard = TestParameters.getParameter("shard", "");
+        // The rerun only has the failed tests of this shard.
+        if (shard.equals("") || RerunPhase.isRunning()) {
+            return methods;
+        }
+        String[] parts = shard.split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Shard must be specified as index/count, e.g. -Dshard=1/4: " + shard);
+        }
+        int index = Integer.parseInt(parts[0].trim());
+        int count = Integer.parseInt(parts[1].trim());
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Shard index must be between 1 and " + count + ": " + shard);
+        }
+
+        return select(methods, TestDurations.loadShared(), index, count);
+    }
+
+    /**
+     * Selects the methods of one shard.
+     *
+     * @param methods   All methods of the test.
+     * @param durations Method names mapped to milliseconds, the same for every shard.
+     * @param index     The shard, from 1.
+     * @param count     The number of shards.
+     * @return
+     */
+    static List<IMethodInstance> select(List<IMethodInstance> methods, Map<String, Long> durations, int index, int count) {
+        Map<String, Long> weights = TestDurations.getUnitWeights(methods, durations);
+        Map<String, Integer> assignment = assign(weights, count);
+        long[] loads = new long[count];
+        weights.forEach((unit, weight) -> loads[assignment.get(unit)] += weight);
+        LOGGER.info("Shard {} of {}: {} of {} test units, estimated shard loads {}",
+                index, count, assignment.values().stream().filter(value -> value == index - 1).count(), weights.size(),
+                Arrays.toString(loads));
+
+        List<IMethodInstance> selected = new ArrayList<>();
+        for (IMethodInstance method : methods) {
+            if (assignment.get(TestDurations.getUnit(method.getMethod())) == index - 1) {
+                selected.add(method);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Assigns the units to shards, heaviest first, each to the shard with the least weight so far.
+     * Ties go to the unit name and to the lowest shard, so the result only depends on the input.
+     *
+     * @param weights Unit names mapped to their weight.
+     * @param count   The number of shards.
+     * @return Unit names mapped to a shard index from 0.
+     */
+    static Map<String, Integer> assign(Map<String, Long> weights, int count) {
+        List<String> units = new ArrayList<>(weights.keySet());
+        units.sort(Comparator.comparing((String unit) -> weights.get(unit)).reversed().thenComparing(Comparator.naturalOrder()));
+
+        long[] loads = new long[count];
+        Map<String, Integer> assignment = new TreeMap<>();
+        for (String unit : units) {
+            int lightest = 0;
+            for (int i = 1; i < count; i++) {
+                if (loads[i] < loads[lightest]) {
+                    lightest = i;
+                }
+            }
+            loads[lightest] += weights.get(unit);
+            assignment.put(unit, lightest);
+        }
+        return assignment;
+    }
+}
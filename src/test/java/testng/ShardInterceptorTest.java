@@ -0,0 +1,127 @@
+package testng;
+
+import org.testng.Assert;
+import org.testng.IMethodInstance;
+import org.testng.TestNG;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Checks that every shard works out the same assignment, whatever order the tests come in.
+ * The method instances come from a TestNG run of the sample classes, which runs none of them.
+ */
+public class ShardInterceptorTest {
+    private static final int SHARDS = 3;
+    private final List<IMethodInstance> methods = new ArrayList<>();
+
+    @BeforeClass
+    public void collectMethods() {
+        TestNG testng = new TestNG(false);
+        testng.setVerbose(0);
+        testng.setTestClasses(new Class[]{ShardSampleIndependent.class, ShardSampleDependent.class});
+        testng.setMethodInterceptor((instances, context) -> {
+            methods.addAll(instances);
+            return Collections.emptyList();
+        });
+        testng.run();
+        Assert.assertEquals(methods.size(), 7, "Sample methods");
+    }
+
+    @Test
+    public void assignmentIsStableAcrossInputOrders() {
+        Map<String, Long> weights = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            // Many equal weights, so ties decide most of the assignment.
+            weights.put("tests.Sample.test" + i, (long) (i % 4) * 1000);
+        }
+        Map<String, Integer> expected = ShardInterceptor.assign(weights, SHARDS);
+        Assert.assertEquals(expected.keySet(), weights.keySet());
+
+        Random random = new Random(1);
+        for (int run = 0; run < 20; run++) {
+            List<String> units = new ArrayList<>(weights.keySet());
+            Collections.shuffle(units, random);
+            Map<String, Long> shuffled = new LinkedHashMap<>();
+            units.forEach(unit -> shuffled.put(unit, weights.get(unit)));
+            Assert.assertEquals(ShardInterceptor.assign(shuffled, SHARDS), expected);
+        }
+    }
+
+    @Test
+    public void selectionIsStableAcrossMethodOrders() {
+        Map<String, Long> durations = getDurations();
+        List<IMethodInstance> reversed = new ArrayList<>(methods);
+        Collections.reverse(reversed);
+
+        for (int shard = 1; shard <= SHARDS; shard++) {
+            Assert.assertEquals(new HashSet<>(getNames(ShardInterceptor.select(reversed, durations, shard, SHARDS))),
+                    new HashSet<>(getNames(ShardInterceptor.select(methods, durations, shard, SHARDS))), "Shard " + shard);
+        }
+    }
+
+    @Test
+    public void everyMethodRunsInOneShard() {
+        Map<String, Long> durations = getDurations();
+        List<String> all = new ArrayList<>();
+        for (int shard = 1; shard <= SHARDS; shard++) {
+            all.addAll(getNames(ShardInterceptor.select(methods, durations, shard, SHARDS)));
+        }
+        Collections.sort(all);
+        Assert.assertEquals(all, getNames(methods).stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void dependentMethodsStayTogether() {
+        Map<String, Long> durations = getDurations();
+        String dependent = ShardSampleDependent.class.getName();
+        int shards = 0;
+        for (int shard = 1; shard <= SHARDS; shard++) {
+            List<IMethodInstance> selected = ShardInterceptor.select(methods, durations, shard, SHARDS);
+            long count = selected.stream().filter(method -> method.getMethod().getRealClass().getName().equals(dependent)).count();
+            if (count > 0) {
+                Assert.assertEquals(count, 3, "Methods of " + dependent + " in shard " + shard);
+                shards++;
+            }
+        }
+        Assert.assertEquals(shards, 1);
+    }
+
+    @Test
+    public void dependentClassIsOneUnit() {
+        Set<String> units = new HashSet<>();
+        for (IMethodInstance method : methods) {
+            if (method.getMethod().getRealClass() == ShardSampleDependent.class) {
+                units.add(TestDurations.getUnit(method.getMethod()));
+            } else {
+                Assert.assertEquals(TestDurations.getUnit(method.getMethod()), method.getMethod().getQualifiedName());
+            }
+        }
+        Assert.assertEquals(units, Collections.singleton(ShardSampleDependent.class.getName()));
+    }
+
+    /**
+     * Every method takes the same time, so ties decide much of the assignment.
+     */
+    private Map<String, Long> getDurations() {
+        Map<String, Long> durations = new HashMap<>();
+        for (IMethodInstance method : methods) {
+            durations.put(method.getMethod().getQualifiedName(), 1000L);
+        }
+        return durations;
+    }
+
+    private static List<String> getNames(List<IMethodInstance> methods) {
+        return methods.stream().map(method -> method.getMethod().getQualifiedName()).collect(Collectors.toList());
+    }
+}
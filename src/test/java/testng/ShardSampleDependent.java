@@ -0,0 +1,21 @@
+package testng;
+
+import org.testng.annotations.Test;
+
+/**
+ * Sample for {@link ShardInterceptorTest}, methods that depend on each other and must stay in one shard.
+ * Top level, because TestNG can't resolve dependencies between the methods of a nested class.
+ */
+class ShardSampleDependent {
+    @Test
+    public void login() {
+    }
+
+    @Test(dependsOnMethods = "login")
+    public void addToCart() {
+    }
+
+    @Test(dependsOnMethods = "addToCart")
+    public void checkOut() {
+    }
+}
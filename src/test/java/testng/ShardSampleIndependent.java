@@ -0,0 +1,25 @@
+package testng;
+
+import org.testng.annotations.Test;
+
+/**
+ * Sample for {@link ShardInterceptorTest}, methods that can go to any shard.
+ * Top level, because TestNG can't resolve dependencies between the methods of a nested class.
+ */
+class ShardSampleIndependent {
+    @Test
+    public void first() {
+    }
+
+    @Test
+    public void second() {
+    }
+
+    @Test
+    public void third() {
+    }
+
+    @Test
+    public void fourth() {
+    }
+}
@@ -0,0 +1,174 @@
+package testng;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IMethodInstance;
+import org.testng.ITestNGMethod;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import utils.TestParameters;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads how long each test method took in earlier runs, from Allure results and TestNG XML results, and from the
+ * local {@link DurationStore}.
+ * Durations are keyed by the fully qualified method name, e.g. "tests.LoginTest.LoginTest", and include all
+ * invocations of the method, e.g. one per data provider row.
+ * Command line usage:
+ * -DtestHistory=results/allure-results,results/testng-results.xml   Result directories and files to read
+ */
+public class TestDurations {
+    private static final Logger LOGGER = LoggerFactory.getLogger("TestDurations");
+    private static final String DEFAULT_HISTORY = "target/allure-results,target/surefire-reports/testng-results.xml";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static Map<String, Long> shared;
+    private static Map<String, Long> all;
+
+    /**
+     * Reads the durations from the results given with -DtestHistory. Every shard reads the same results, so use only
+     * these where all shards must come to the same answer. Read once per run.
+     *
+     * @return Method names mapped to milliseconds. Empty when there is no history.
+     */
+    public static synchronized Map<String, Long> loadShared() {
+        if (shared == null) {
+            shared = Collections.unmodifiableMap(readHistory());
+        }
+        return shared;
+    }
+
+    /**
+     * Reads the shared durations, overridden by the local {@link DurationStore}. Read once per run.
+     *
+     * @return Method names mapped to milliseconds. Empty when there is no history.
+     */
+    public static synchronized Map<String, Long> load() {
+        if (all == null) {
+            Map<String, Long> durations = new HashMap<>(loadShared());
+            durations.putAll(DurationStore.getInstance().load());
+            all = Collections.unmodifiableMap(durations);
+        }
+        return all;
+    }
+
+    private static Map<String, Long> readHistory() {
+        Map<String, Long> durations = new HashMap<>();
+        for (String location : TestParameters.getParameter("testHistory", DEFAULT_HISTORY).split(",")) {
+            Path path = Paths.get(location.trim());
+            try {
+                if (Files.isDirectory(path)) {
+                    durations.putAll(readAllureResults(path));
+                } else if (Files.isRegularFile(path)) {
+                    durations.putAll(readTestNgResults(path));
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Unable to read test history {}: {}", path, e.toString());
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Allure keeps the results of several runs when the directory isn't cleaned, so each invocation is averaged over
+     * its runs. Invocations are told apart by the history id, which includes the parameters.
+     */
+    static Map<String, Long> readAllureResults(Path directory) throws IOException {
+        Map<String, Map<String, long[]>> invocations = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*-result.json")) {
+            for (Path file : files) {
+                JsonNode result = MAPPER.readTree(file.toFile());
+                String name = result.path("fullName").asText("");
+                long start = result.path("start").asLong(0);
+                long stop = result.path("stop").asLong(0);
+                if (name.isEmpty() || start == 0 || stop < start) {
+                    continue;
+                }
+                long[] totals = invocations.computeIfAbsent(name, key -> new HashMap<>())
+                        .computeIfAbsent(result.path("historyId").asText(name), key -> new long[2]);
+                totals[0] += stop - start;
+                totals[1]++;
+            }
+        }
+
+        Map<String, Long> durations = new HashMap<>();
+        invocations.forEach((name, byHistoryId) ->
+                durations.put(name, byHistoryId.values().stream().mapToLong(totals -> totals[0] / totals[1]).sum()));
+        return durations;
+    }
+
+    static Map<String, Long> readTestNgResults(Path file) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file.toFile());
+        Map<String, Long> durations = new HashMap<>();
+        NodeList classes = document.getElementsByTagName("class");
+        for (int i = 0; i < classes.getLength(); i++) {
+            Element testClass = (Element) classes.item(i);
+            NodeList methods = testClass.getElementsByTagName("test-method");
+            for (int j = 0; j < methods.getLength(); j++) {
+                Element method = (Element) methods.item(j);
+                if (method.getAttribute("is-config").equals("true")) {
+                    continue;
+                }
+                String name = testClass.getAttribute("name") + "." + method.getAttribute("name");
+                durations.merge(name, Long.parseLong(method.getAttribute("duration-ms")), Long::sum);
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Sums the durations per scheduling unit, see {@link #getUnit(ITestNGMethod)}.
+     * Methods without history count as the median of the known durations.
+     */
+    static Map<String, Long> getUnitWeights(List<IMethodInstance> methods, Map<String, Long> durations) {
+        Set<String> names = new HashSet<>();
+        List<Long> known = new ArrayList<>();
+        for (IMethodInstance method : methods) {
+            String name = method.getMethod().getQualifiedName();
+            if (names.add(name) && durations.containsKey(name)) {
+                known.add(durations.get(name));
+            }
+        }
+        known.sort(Comparator.naturalOrder());
+        long unknown = known.isEmpty() ? 1 : Math.max(1, known.get(known.size() / 2));
+
+        Map<String, Long> weights = new HashMap<>();
+        Set<String> counted = new HashSet<>();
+        for (IMethodInstance method : methods) {
+            String name = method.getMethod().getQualifiedName();
+            if (counted.add(name)) {
+                weights.merge(getUnit(method.getMethod()), durations.getOrDefault(name, unknown), Long::sum);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Methods that depend on other methods must stay with those when tests are split or reordered,
+     * so a class with dependencies between its methods is one unit.
+     */
+    static String getUnit(ITestNGMethod method) {
+        for (ITestNGMethod other : method.getTestClass().getTestMethods()) {
+            if (other.getMethodsDependedUpon().length > 0 || other.getGroupsDependedUpon().length > 0) {
+                return method.getRealClass().getName();
+            }
+        }
+        return method.getQualifiedName();
+    }
+}
@@ -0,0 +1,60 @@
+package testng;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IExecutorServiceFactory;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the tests of the lane without a browser ({@link NonUiLane}) on virtual threads, so the lane can have hundreds
+ * of threads that mostly wait for the database or an API. The pool keeps the size TestNG asks for, so -DnonUiThreads
+ * still limits the lane. Browser tests keep platform threads.
+ * Virtual threads need Java 21. The build targets Java 11, so they are created through reflection, and older JVMs
+ * use platform threads.
+ * Used by the java21 Maven profile, or on the TestNG command line:
+ * -threadpoolfactoryclass testng.VirtualThreadExecutorFactory
+ */
+public class VirtualThreadExecutorFactory implements IExecutorServiceFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger("VirtualThreadExecutorFactory");
+
+    @Override
+    public ExecutorService create(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                  BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory) {
+        ThreadFactory factory = threadFactory;
+        // TestNG names the threads of a pool after its test, which is the only link between the pool and the test.
+        // See NonUiLane#isLaneThread for the format.
+        String poolName = threadFactory.newThread(() -> {
+        }).getName();
+        if (NonUiLane.isLaneThread(poolName)) {
+            ThreadFactory virtualThreads = getVirtualThreadFactory(poolName);
+            if (virtualThreads != null) {
+                LOGGER.info("Running {} on up to {} virtual threads", poolName, maximumPoolSize);
+                factory = virtualThreads;
+            }
+        }
+        return new ThreadPoolExecutor(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, factory);
+    }
+
+    /**
+     * Returns Thread.ofVirtual().name(prefix, 0).factory().
+     *
+     * @param prefix
+     * @return Null before Java 21.
+     */
+    private static ThreadFactory getVirtualThreadFactory(String prefix) {
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtual = builder.getMethod("name", String.class, long.class).invoke(virtual, prefix + "-virtual-", 0L);
+            return (ThreadFactory) builder.getMethod("factory").invoke(virtual);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warn("Virtual threads need Java 21, running on platform threads: {}", e.toString());
+            return null;
+        }
+    }
+}
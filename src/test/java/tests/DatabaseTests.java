@@ -2,12 +2,15 @@ package tests;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
+import testng.BaseFrameworkTest;
 import utils.DBUtils;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
-public class DatabaseTests extends BaseTest {
+// Runs without a browser, see NonUiLane. The methods share the same row, so they don't run in parallel.
+@Test(singleThreaded = true)
+public class DatabaseTests extends BaseFrameworkTest {
     @Test
     public void testCreateAndRead() throws SQLException {
         String createQuery = "INSERT INTO users (id, name, email) VALUES (1, 'Okuhle Mbewu', 'om@gmail.com');";
@@ -8,7 +8,7 @@ public class PurchaseProcessTest extends BaseTest {
     @Test
     public void PurchaseProcessTest() throws Exception {
         SoftAssert softAssert = new SoftAssert();
-        new LoginPage(getDriver()).UserLogin("standard_user", "secret_sauce");
+        new LoginPage(getDriver()).login("standard_user", "secret_sauce");
         // Checkout items
         new ProductsPage(getDriver()).addItemsToCart();
         new ProductsPage(getDriver()).goToCart();